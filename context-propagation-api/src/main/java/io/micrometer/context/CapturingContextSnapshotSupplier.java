@@ -0,0 +1,60 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context;
+
+import java.lang.ref.WeakReference;
+import java.util.function.Supplier;
+
+/**
+ * Supplier of a {@link ContextSnapshot} captured with a {@link ContextCapturer}
+ * on the calling thread, for each submission to an instrumented executor.
+ *
+ * <p>The last snapshot supplied on each thread is kept, and supplied again as
+ * long as the ThreadLocal values of that thread remain the same instances,
+ * which saves the allocation of a new snapshot for each of a series of
+ * submissions made within the same context. The snapshot is held weakly, the
+ * same as by {@link ThreadLocalChangeTracker}, so that it does not keep values
+ * reachable after the tasks that use it are done.
+ *
+ * @since 1.0.0
+ */
+final class CapturingContextSnapshotSupplier implements Supplier<ContextSnapshot> {
+
+    private final ContextCapturer capturer;
+
+    private final ThreadLocal<WeakReference<ContextSnapshot>> lastSnapshot = new ThreadLocal<>();
+
+
+    CapturingContextSnapshotSupplier(ContextCapturer capturer) {
+        this.capturer = capturer;
+    }
+
+
+    @Override
+    public ContextSnapshot get() {
+        if (!(this.capturer instanceof DefaultContextCapturer)) {
+            return this.capturer.capture();
+        }
+        WeakReference<ContextSnapshot> reference = this.lastSnapshot.get();
+        ContextSnapshot previous = (reference != null ? reference.get() : null);
+        ContextSnapshot snapshot = ((DefaultContextCapturer) this.capturer).captureOrReuse(previous);
+        if (snapshot != previous) {
+            this.lastSnapshot.set(new WeakReference<>(snapshot));
+        }
+        return snapshot;
+    }
+
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context;
+
+/**
+ * Extension of {@link ThreadLocalAccessor} for a {@link ThreadLocal} whose
+ * changes are reported through {@link #valueChanged()}, which allows a thread
+ * that captures repeatedly without changes in between to get the same
+ * {@link ContextSnapshot} back, without reading values again.
+ *
+ * <p>Implementations must call {@link #valueChanged()} on every change to the
+ * value on the current thread, from {@link #setValue(Object)} and
+ * {@link #reset()}, and from any other code that sets or removes the
+ * {@code ThreadLocal} directly. The last snapshot is reused only when all
+ * accessors in the {@link ContextRegistry} implement this contract.
+ *
+ * @param <V> the type of the {@code ThreadLocal} value
+ * @since 1.0.0
+ */
+public interface ChangeTrackedThreadLocalAccessor<V> extends ThreadLocalAccessor<V> {
+
+    /**
+     * Report a change to the value of a change-tracked {@link ThreadLocal} on
+     * the current thread, which discards the last snapshot captured on it.
+     */
+    static void valueChanged() {
+        ThreadLocalChangeTracker.valueChanged();
+    }
+
+}
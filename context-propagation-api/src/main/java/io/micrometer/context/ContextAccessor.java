@@ -16,6 +16,7 @@
 package io.micrometer.context;
 
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Predicate;
 
 /**
@@ -47,6 +48,22 @@ public interface ContextAccessor<READ, WRITE> {
      */
     void readValues(READ sourceContext, Predicate<Object> keyPredicate, Map<Object, Object> readValues);
 
+    /**
+     * Variant of {@link #readValues(Object, Predicate, Map)} to read the values
+     * of a known set of keys, e.g. the keys of registered
+     * {@link ThreadLocalAccessor}'s, which allows accessors to look up each key
+     * rather than iterate over all entries of a large context.
+     * <p>By default, this delegates to {@link #readValues(Object, Predicate, Map)}
+     * with a predicate that tests whether the set contains the key.
+     * @param sourceContext the context to read from; the context type should be
+     * checked with {@link #canReadFrom(Class)} before this method is called
+     * @param keys the keys to read
+     * @param readValues a map where to put read values
+     */
+    default void readValues(READ sourceContext, Set<?> keys, Map<Object, Object> readValues) {
+        readValues(sourceContext, keys::contains, readValues);
+    }
+
     /**
      * Whether this accessor can restore values to the given type of context.
      * @param contextType the type of external context
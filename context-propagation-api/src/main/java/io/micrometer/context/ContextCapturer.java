@@ -0,0 +1,116 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Predicate;
+
+/**
+ * Reusable plan to capture a {@link ContextSnapshot} with a fixed selection
+ * of keys and expected types of context.
+ *
+ * <p>Unlike {@link ContextSnapshot#capture(ContextRegistry, Predicate, Object...)},
+ * which tests the key predicate against every registered accessor on every
+ * call, a capturer selects the {@link ThreadLocalAccessor}'s and resolves the
+ * {@link ContextAccessor}'s for the expected context types once, and then
+ * reuses them. When accessors are registered after that, the capturer
+ * resolves them again on its next use.
+ *
+ * <p>Use static factory methods on this interface to create a capturer, and
+ * keep it, e.g. in a static field, for the life of the application.
+ *
+ * @since 1.0.0
+ */
+public interface ContextCapturer {
+
+    /**
+     * Capture {@link ThreadLocal} values.
+     * @return a snapshot with saved context values
+     */
+    ContextSnapshot capture();
+
+    /**
+     * Capture {@link ThreadLocal} values, and values from the given context.
+     * @param context a context object to extract values from
+     * @return a snapshot with saved context values
+     */
+    ContextSnapshot capture(Object context);
+
+    /**
+     * Capture {@link ThreadLocal} values, and values from the given contexts.
+     * @param contexts one or more context objects to extract values from
+     * @return a snapshot with saved context values
+     */
+    ContextSnapshot capture(Object... contexts);
+
+    /**
+     * Return a new {@code ExecutorService} that captures {@link ThreadLocal}
+     * values on the submitting thread for each task, and sets them around
+     * the task, unlike {@link ContextSnapshot#instrumentExecutorService}, which
+     * propagates the values of a single snapshot captured upfront.
+     * <p>A submitting thread reuses the snapshot from its last submission, for
+     * as long as its {@code ThreadLocal} values remain the same instances.
+     * The last snapshot of each thread is held weakly, and may be captured
+     * again once no task refers to it.
+     * @param executorService the executorService to instrument
+     */
+    default ExecutorService instrumentExecutorService(ExecutorService executorService) {
+        return new InstrumentedExecutorService(executorService, new CapturingContextSnapshotSupplier(this));
+    }
+
+
+    /**
+     * Create a capturer for the {@link ContextRegistry#getInstance() global}
+     * ContextRegistry instance.
+     * @param keyPredicate predicate for context value keys
+     * @param contextTypes the types of context expected to be captured from
+     * @return the created capturer
+     */
+    static ContextCapturer create(Predicate<Object> keyPredicate, Class<?>... contextTypes) {
+        return create(ContextRegistry.getInstance(), keyPredicate, contextTypes);
+    }
+
+    /**
+     * Variant of {@link #create(Predicate, Class[])} with a specific
+     * {@link ContextRegistry} instead of the global instance.
+     * @param contextRegistry the {@code ContextRegistry} instance to use
+     * @param keyPredicate predicate for context value keys
+     * @param contextTypes the types of context expected to be captured from
+     * @return the created capturer
+     */
+    static ContextCapturer create(
+            ContextRegistry contextRegistry, Predicate<Object> keyPredicate, Class<?>... contextTypes) {
+
+        return new DefaultContextCapturer(contextRegistry, keyPredicate, contextTypes);
+    }
+
+    /**
+     * Variant of {@link #create(ContextRegistry, Predicate, Class[])} that
+     * captures the given set of keys. This lets a {@link ContextAccessor} look
+     * up each key through {@link ContextAccessor#readValues(Object, Set, Map)},
+     * rather than test every entry of a context.
+     * @param contextRegistry the {@code ContextRegistry} instance to use
+     * @param keys the context value keys to capture
+     * @param contextTypes the types of context expected to be captured from
+     * @return the created capturer
+     */
+    static ContextCapturer forKeys(ContextRegistry contextRegistry, Set<?> keys, Class<?>... contextTypes) {
+        return new DefaultContextCapturer(contextRegistry, keys, contextTypes);
+    }
+
+}
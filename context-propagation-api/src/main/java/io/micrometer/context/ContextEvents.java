@@ -0,0 +1,62 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context;
+
+/**
+ * Hooks for JDK Flight Recorder events for capturing a {@link ContextSnapshot},
+ * setting its {@code ThreadLocal} values, and the lifetime of the
+ * {@link ContextSnapshot.Scope} that restores them.
+ *
+ * <p>Flight Recorder events require Java 11. This is the variant for earlier
+ * versions, which does nothing, and the multi-release JAR provides the
+ * implementation for Java 11 and later. A {@code begin} method returns an
+ * event to pass to the matching {@code end} method, or {@code null} if events
+ * of the type are not enabled, in which case there is nothing to pass on.
+ *
+ * @since 1.0.0
+ */
+final class ContextEvents {
+
+    private ContextEvents() {
+    }
+
+
+    @Nullable
+    static Object beginCapture() {
+        return null;
+    }
+
+    static void endCapture(@Nullable Object event, ContextRegistry registry, int snapshotSize, int accessorCount) {
+    }
+
+    @Nullable
+    static Object beginSetThreadLocalValues() {
+        return null;
+    }
+
+    static void endSetThreadLocalValues(
+            @Nullable Object event, ContextRegistry registry, int snapshotSize, int accessorCount) {
+    }
+
+    @Nullable
+    static Object beginScope() {
+        return null;
+    }
+
+    static void endScope(@Nullable Object event, int accessorCount) {
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context;
+
+/**
+ * Callbacks for context propagation operations, e.g. to collect metrics, set
+ * on a {@link ContextRegistry} through
+ * {@link ContextRegistry#setPropagationListener(ContextPropagationListener)},
+ * and invoked for operations performed with it. When no listener is set,
+ * operations are not timed, and there are no callbacks.
+ *
+ * <p>Callbacks are invoked on the thread performing the operation, often on
+ * a hot path, and should be fast and must not throw.
+ *
+ * @since 1.0.0
+ * @see ContextPropagationRecorder
+ */
+public interface ContextPropagationListener {
+
+    /**
+     * Invoked when a snapshot is captured, including when a previous snapshot
+     * is returned again, see {@link ChangeTrackedThreadLocalAccessor}.
+     * <p>For a snapshot captured with
+     * {@link ContextSnapshot#captureLazily(ContextRegistry, java.util.function.Predicate, Object...)},
+     * this is invoked on capture, with the number of {@code ThreadLocal}
+     * values only, since values from contexts are read later, if ever.
+     * @param size the number of values in the snapshot
+     */
+    default void snapshotCaptured(int size) {
+    }
+
+    /**
+     * Invoked when a {@link ThreadLocal} value from a snapshot is set.
+     * @param key the key of the {@link ThreadLocalAccessor}, or the list of
+     * keys of a {@link GroupedThreadLocalAccessor}
+     * @param nanos the time it took to read the previous value and set the
+     * new value
+     */
+    default void threadLocalValueSet(Object key, long nanos) {
+    }
+
+    /**
+     * Invoked when a {@link ThreadLocal} value is restored to its previous
+     * value, or removed, on {@link ContextSnapshot.Scope#close()}.
+     * @param key the key of the {@link ThreadLocalAccessor}, or the list of
+     * keys of a {@link GroupedThreadLocalAccessor}
+     * @param nanos the time it took to restore the value
+     */
+    default void threadLocalValueRestored(Object key, long nanos) {
+    }
+
+    /**
+     * Invoked when values from a snapshot are written to a context through
+     * {@link ContextSnapshot#updateContext(Object)}.
+     * @param size the number of values written
+     */
+    default void contextUpdated(int size) {
+    }
+
+}
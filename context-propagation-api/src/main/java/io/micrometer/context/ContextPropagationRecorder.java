@@ -0,0 +1,213 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * {@link ContextPropagationListener} that records counts, and latencies by
+ * key, in memory, for a metrics exporter to poll. Counters are
+ * {@link LongAdder}'s, which are striped to keep contention low when many
+ * threads record at once.
+ *
+ * <pre class="code">
+ * ContextPropagationRecorder recorder = new ContextPropagationRecorder();
+ * ContextRegistry.getInstance().setPropagationListener(recorder);
+ *
+ * // later, from a metrics exporter
+ * long captures = recorder.getCaptureCount();
+ * recorder.getSetLatencies().forEach((key, histogram) -&gt; ...);
+ * </pre>
+ *
+ * @since 1.0.0
+ */
+public class ContextPropagationRecorder implements ContextPropagationListener {
+
+    private final LongAdder captureCount = new LongAdder();
+
+    private final LongAdder capturedValueCount = new LongAdder();
+
+    private final LongAdder contextUpdateCount = new LongAdder();
+
+    private final LongAdder contextUpdateValueCount = new LongAdder();
+
+    private final Map<Object, LatencyHistogram> setLatencies = new ConcurrentHashMap<>();
+
+    private final Map<Object, LatencyHistogram> restoreLatencies = new ConcurrentHashMap<>();
+
+
+    @Override
+    public void snapshotCaptured(int size) {
+        this.captureCount.increment();
+        this.capturedValueCount.add(size);
+    }
+
+    @Override
+    public void threadLocalValueSet(Object key, long nanos) {
+        getHistogram(this.setLatencies, key).record(nanos);
+    }
+
+    @Override
+    public void threadLocalValueRestored(Object key, long nanos) {
+        getHistogram(this.restoreLatencies, key).record(nanos);
+    }
+
+    @Override
+    public void contextUpdated(int size) {
+        this.contextUpdateCount.increment();
+        this.contextUpdateValueCount.add(size);
+    }
+
+    private static LatencyHistogram getHistogram(Map<Object, LatencyHistogram> histograms, Object key) {
+        // get first, since computeIfAbsent may lock even if present
+        LatencyHistogram histogram = histograms.get(key);
+        return (histogram != null ? histogram : histograms.computeIfAbsent(key, k -> new LatencyHistogram()));
+    }
+
+
+    /**
+     * Return the number of snapshots captured.
+     */
+    public long getCaptureCount() {
+        return this.captureCount.sum();
+    }
+
+    /**
+     * Return the total number of values in captured snapshots, which divided
+     * by {@link #getCaptureCount()} gives the average snapshot size.
+     */
+    public long getCapturedValueCount() {
+        return this.capturedValueCount.sum();
+    }
+
+    /**
+     * Return the number of times a context was updated from a snapshot.
+     */
+    public long getContextUpdateCount() {
+        return this.contextUpdateCount.sum();
+    }
+
+    /**
+     * Return the total number of values written to contexts.
+     */
+    public long getContextUpdateValueCount() {
+        return this.contextUpdateValueCount.sum();
+    }
+
+    /**
+     * Return a read-only view of latencies to set {@code ThreadLocal} values,
+     * by {@link ContextPropagationListener#threadLocalValueSet key}.
+     */
+    public Map<Object, LatencyHistogram> getSetLatencies() {
+        return Collections.unmodifiableMap(this.setLatencies);
+    }
+
+    /**
+     * Return a read-only view of latencies to restore {@code ThreadLocal}
+     * values, by {@link ContextPropagationListener#threadLocalValueRestored key}.
+     */
+    public Map<Object, LatencyHistogram> getRestoreLatencies() {
+        return Collections.unmodifiableMap(this.restoreLatencies);
+    }
+
+    @Override
+    public String toString() {
+        return "ContextPropagationRecorder{captures=" + getCaptureCount() + ", " +
+                "capturedValues=" + getCapturedValueCount() + ", " +
+                "contextUpdates=" + getContextUpdateCount() + ", " +
+                "setLatencies=" + this.setLatencies + ", " +
+                "restoreLatencies=" + this.restoreLatencies + "}";
+    }
+
+
+    /**
+     * Histogram of latencies in buckets by power of two nanoseconds, where
+     * bucket {@code i > 0} counts latencies from {@code 2^(i-1)} up to, but
+     * not including {@code 2^i} nanoseconds, and bucket 0 counts latencies of
+     * 0, e.g. below the resolution of {@link System#nanoTime()}.
+     */
+    public static final class LatencyHistogram {
+
+        /**
+         * The number of buckets, covering all non-negative {@code long} values.
+         */
+        public static final int BUCKET_COUNT = 64;
+
+        private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+
+        private final LongAdder count = new LongAdder();
+
+        private final LongAdder totalNanos = new LongAdder();
+
+        LatencyHistogram() {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                this.buckets[i] = new LongAdder();
+            }
+        }
+
+        void record(long nanos) {
+            long value = Math.max(nanos, 0);
+            this.buckets[Long.SIZE - Long.numberOfLeadingZeros(value)].increment();
+            this.count.increment();
+            this.totalNanos.add(value);
+        }
+
+        /**
+         * Return the number of recorded latencies.
+         */
+        public long getCount() {
+            return this.count.sum();
+        }
+
+        /**
+         * Return the sum of recorded latencies in nanoseconds.
+         */
+        public long getTotalNanos() {
+            return this.totalNanos.sum();
+        }
+
+        /**
+         * Return the counts of all buckets, in a new array of
+         * {@link #BUCKET_COUNT} elements.
+         */
+        public long[] getBucketCounts() {
+            long[] counts = new long[BUCKET_COUNT];
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                counts[i] = this.buckets[i].sum();
+            }
+            return counts;
+        }
+
+        /**
+         * Return the upper bound, exclusive, of the given bucket in nanoseconds.
+         * @param bucket the bucket index
+         */
+        public static long getBucketUpperBound(int bucket) {
+            return (bucket < BUCKET_COUNT - 1 ? 1L << bucket : Long.MAX_VALUE);
+        }
+
+        @Override
+        public String toString() {
+            long count = getCount();
+            return "LatencyHistogram{count=" + count + ", " +
+                    "meanNanos=" + (count > 0 ? getTotalNanos() / count : 0) + "}";
+        }
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context;
+
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * {@link RecursiveTask} that sets {@code ThreadLocal} values from a
+ * {@link ContextSnapshot} around {@link #computeWithContext()}, on whichever
+ * worker thread runs it. Subtasks pass on the snapshot of their parent, see
+ * {@link #getContextSnapshot()}, so that values are present for subtasks that
+ * are forked and stolen by other workers.
+ *
+ * <p>Submitting a plain {@code RecursiveTask} through
+ * {@link ContextSnapshot#instrumentExecutorService} wraps it as a
+ * {@code Callable}, which propagates values to the submitted task only.
+ * A subtask that runs on a worker thread where the same snapshot is already
+ * set, e.g. one that is joined and run by the thread that forked it, does not
+ * set or restore values again.
+ *
+ * <pre class="code">
+ * class SumTask extends ContextRecursiveTask&lt;Long&gt; {
+ *
+ *     SumTask(ContextSnapshot snapshot, long[] array, int from, int to) {
+ *         super(snapshot);
+ *         // ...
+ *     }
+ *
+ *     protected Long computeWithContext() {
+ *         // ...
+ *         SumTask left = new SumTask(getContextSnapshot(), array, from, mid);
+ *         left.fork();
+ *         // ...
+ *     }
+ * }
+ * </pre>
+ *
+ * @param <V> the type of the result of the task
+ * @since 1.0.0
+ */
+public abstract class ContextRecursiveTask<V> extends RecursiveTask<V> {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The snapshot whose values are set on the current worker thread.
+     */
+    private static final ThreadLocal<ContextSnapshot> currentSnapshot = new ThreadLocal<>();
+
+    private final transient ContextSnapshot contextSnapshot;
+
+
+    /**
+     * Create an instance.
+     * @param contextSnapshot the snapshot with values to set; a subtask should
+     * pass in the snapshot of its parent task
+     */
+    protected ContextRecursiveTask(ContextSnapshot contextSnapshot) {
+        this.contextSnapshot = contextSnapshot;
+    }
+
+
+    /**
+     * Return the snapshot with the values set around
+     * {@link #computeWithContext()}, to pass on to subtasks.
+     */
+    public final ContextSnapshot getContextSnapshot() {
+        return this.contextSnapshot;
+    }
+
+    @Override
+    protected final V compute() {
+        ContextSnapshot previousSnapshot = currentSnapshot.get();
+        if (previousSnapshot == this.contextSnapshot) {
+            return computeWithContext();
+        }
+        currentSnapshot.set(this.contextSnapshot);
+        try (ContextSnapshot.Scope scope = this.contextSnapshot.setThreadLocalValues()) {
+            return computeWithContext();
+        }
+        finally {
+            if (previousSnapshot != null) {
+                currentSnapshot.set(previousSnapshot);
+            }
+            else {
+                currentSnapshot.remove();
+            }
+        }
+    }
+
+    /**
+     * The main computation performed by this task, with {@code ThreadLocal}
+     * values from the snapshot set.
+     * @return the result of the computation
+     */
+    protected abstract V computeWithContext();
+
+}
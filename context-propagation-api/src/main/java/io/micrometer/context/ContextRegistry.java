@@ -35,27 +35,39 @@ import java.util.concurrent.CopyOnWriteArrayList;
  */
 public class ContextRegistry {
 
+    /** Cached for a context type that no registered accessor supports. */
+    private static final Object NO_CONTEXT_ACCESSOR = new Object();
+
     private static final ContextRegistry instance =
             new ContextRegistry().loadContextAccessors().loadThreadLocalAccessors();
 
 
     private final List<ContextAccessor<?, ?>> contextAccessors = new CopyOnWriteArrayList<>();
 
-    private final List<ThreadLocalAccessor<?>> threadLocalAccessors = new CopyOnWriteArrayList<>();
+    private volatile ThreadLocalAccessorTable threadLocalAccessorTable = ThreadLocalAccessorTable.EMPTY;
 
 
     private final List<ContextAccessor<?, ?>> readOnlyContextAccessors =
             Collections.unmodifiableList(this.contextAccessors);
 
-    private final List<ThreadLocalAccessor<?>> readOnlyThreadLocalAccessors =
-            Collections.unmodifiableList(this.threadLocalAccessors);
+    private volatile ContextAccessorCache contextAccessorCache = new ContextAccessorCache();
+
+    private volatile int version;
+
+    @Nullable
+    private volatile ContextPropagationListener propagationListener;
+
+    @Nullable
+    private volatile ScopeLeakDetector scopeLeakDetector;
+
+    private final ContextSnapshot emptyContextSnapshot = DefaultContextSnapshot.emptySnapshot(this);
 
 
     /**
      * Register a {@link ContextAccessor}. If there is an existing registration
      * of the same {@code ContextAccessor} type, it is removed first.
      */
-    public ContextRegistry registerContextAccessor(ContextAccessor<?, ?> accessor) {
+    public synchronized ContextRegistry registerContextAccessor(ContextAccessor<?, ?> accessor) {
         for (ContextAccessor<?, ?> existing : this.contextAccessors) {
             if (existing.getClass().equals(accessor.getClass())) {
                 this.contextAccessors.remove(existing);
@@ -63,22 +75,35 @@ public class ContextRegistry {
             }
         }
         this.contextAccessors.add(accessor);
+        this.contextAccessorCache = new ContextAccessorCache();
+        this.version++;
         return this;
     }
 
     /**
      * Register a {@link ThreadLocalAccessor}. If there is an existing
      * registration with the same {@link ThreadLocalAccessor#key() key}, it is
-     * removed first.
+     * replaced, and the new accessor takes its position. That applies to the
+     * keys of a {@link GroupedThreadLocalAccessor} as well.
      */
-    public ContextRegistry registerThreadLocalAccessor(ThreadLocalAccessor<?> accessor) {
-        for (ThreadLocalAccessor<?> existing : this.threadLocalAccessors) {
-            if (existing.key().equals(accessor.key())) {
-                this.threadLocalAccessors.remove(existing);
-                break;
-            }
-        }
-        this.threadLocalAccessors.add(accessor);
+    public synchronized ContextRegistry registerThreadLocalAccessor(ThreadLocalAccessor<?> accessor) {
+        int newVersion = this.version + 1;
+        this.threadLocalAccessorTable = this.threadLocalAccessorTable.withAccessor(accessor, newVersion);
+        this.version = newVersion;
+        return this;
+    }
+
+    /**
+     * Register a {@link GroupedThreadLocalAccessor}. Each of its keys is
+     * registered like the key of a {@link ThreadLocalAccessor}, replacing an
+     * existing registration with the same key, if any, including a key of
+     * another group. The values of the group are then read and written in one
+     * call per {@link ContextSnapshot} operation.
+     */
+    public synchronized ContextRegistry registerThreadLocalAccessor(GroupedThreadLocalAccessor accessor) {
+        int newVersion = this.version + 1;
+        this.threadLocalAccessorTable = this.threadLocalAccessorTable.withGroup(accessor, newVersion);
+        this.version = newVersion;
         return this;
     }
 
@@ -94,13 +119,14 @@ public class ContextRegistry {
     }
 
     /**
-     * Load {@link ThreadLocalAccessor} implementations through the
-     * {@link ServiceLoader} mechanism.
+     * Load {@link ThreadLocalAccessor} and {@link GroupedThreadLocalAccessor}
+     * implementations through the {@link ServiceLoader} mechanism.
      * <p>Note that existing registrations with the same
      * {@link ThreadLocalAccessor#key() key}, if any, are removed first.
      */
     public ContextRegistry loadThreadLocalAccessors() {
         ServiceLoader.load(ThreadLocalAccessor.class).forEach(this::registerThreadLocalAccessor);
+        ServiceLoader.load(GroupedThreadLocalAccessor.class).forEach(this::registerThreadLocalAccessor);
         return this;
     }
 
@@ -110,12 +136,11 @@ public class ContextRegistry {
      * @throws IllegalStateException if no match is found
      */
     public ContextAccessor<?, ?> getContextAccessorForRead(Object context) {
-        for (ContextAccessor<?, ?> accessor : this.contextAccessors) {
-            if (accessor.canReadFrom(context.getClass())) {
-                return accessor;
-            }
+        ContextAccessor<?, ?> accessor = findContextAccessorForRead(context.getClass());
+        if (accessor == null) {
+            throw noContextAccessorException(context);
         }
-        throw new IllegalStateException("No ContextAccessor for contextType: " + context.getClass());
+        return accessor;
     }
 
     /**
@@ -124,12 +149,39 @@ public class ContextRegistry {
      * @throws IllegalStateException if no match is found
      */
     public ContextAccessor<?, ?> getContextAccessorForWrite(Object context) {
-        for (ContextAccessor<?, ?> accessor : this.contextAccessors) {
-            if (accessor.canWriteTo(context.getClass())) {
-                return accessor;
-            }
+        ContextAccessor<?, ?> accessor = findContextAccessorForWrite(context.getClass());
+        if (accessor == null) {
+            throw noContextAccessorException(context);
         }
-        throw new IllegalStateException("No ContextAccessor for contextType: " + context.getClass());
+        return accessor;
+    }
+
+    /**
+     * Variant of {@link #getContextAccessorForRead(Object)} to look up an
+     * accessor by context type, e.g. ahead of reading any context, that
+     * returns {@code null} rather than throw if there is no match.
+     * @param contextType the type of context to read from
+     * @return the matching accessor, or {@code null}
+     */
+    @Nullable
+    ContextAccessor<?, ?> findContextAccessorForRead(Class<?> contextType) {
+        return this.contextAccessorCache.getReadAccessor(contextType);
+    }
+
+    /**
+     * Variant of {@link #getContextAccessorForWrite(Object)} to look up an
+     * accessor by context type, that returns {@code null} rather than throw
+     * if there is no match.
+     * @param contextType the type of context to write to
+     * @return the matching accessor, or {@code null}
+     */
+    @Nullable
+    ContextAccessor<?, ?> findContextAccessorForWrite(Class<?> contextType) {
+        return this.contextAccessorCache.getWriteAccessor(contextType);
+    }
+
+    private static IllegalStateException noContextAccessorException(Object context) {
+        return new IllegalStateException("No ContextAccessor for contextType: " + context.getClass());
     }
 
     /**
@@ -141,16 +193,86 @@ public class ContextRegistry {
 
     /**
      * Return a read-only list of registered {@link ThreadLocalAccessor}'s.
+     * A {@link GroupedThreadLocalAccessor} is represented by one accessor per
+     * key, each accessing the whole group for its value.
+     * <p>The list reflects registrations at the time of the call, and does
+     * not change after that.
      */
     public List<ThreadLocalAccessor<?>> getThreadLocalAccessors() {
-        return this.readOnlyThreadLocalAccessors;
+        return this.threadLocalAccessorTable.asList();
+    }
+
+    /**
+     * Set a listener to be invoked for propagation operations performed with
+     * this registry, e.g. a {@link ContextPropagationRecorder}, or
+     * {@code null} to remove it. Operations are not timed when there is no
+     * listener.
+     * @param listener the listener to use, or {@code null}
+     * @return the same registry instance
+     */
+    public ContextRegistry setPropagationListener(@Nullable ContextPropagationListener listener) {
+        this.propagationListener = listener;
+        return this;
+    }
+
+    /**
+     * Return the configured {@link ContextPropagationListener}, if any.
+     */
+    @Nullable
+    public ContextPropagationListener getPropagationListener() {
+        return this.propagationListener;
+    }
+
+    /**
+     * Set a detector for scopes that are not closed, or closed on a different
+     * thread, or {@code null} to remove it. A detector with a sample rate of 0
+     * that does not check executor tasks is not kept, so that scopes are not
+     * sampled at all.
+     * @param detector the detector to use, or {@code null}
+     * @return the same registry instance
+     */
+    public ContextRegistry setScopeLeakDetector(@Nullable ScopeLeakDetector detector) {
+        this.scopeLeakDetector = (detector != null && detector.isEnabled() ? detector : null);
+        return this;
+    }
+
+    /**
+     * Return the configured {@link ScopeLeakDetector}, if any.
+     */
+    @Nullable
+    public ScopeLeakDetector getScopeLeakDetector() {
+        return this.scopeLeakDetector;
+    }
+
+    /**
+     * Return the snapshot without values captured with this registry.
+     */
+    ContextSnapshot getEmptyContextSnapshot() {
+        return this.emptyContextSnapshot;
+    }
+
+    /**
+     * Return the current version of the registry, incremented on every
+     * registration of any type of accessor. The version is updated after the
+     * registration, so state read after the version is at least as recent.
+     */
+    int getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Return the current, immutable table of registered
+     * {@link ThreadLocalAccessor}'s by slot.
+     */
+    ThreadLocalAccessorTable getThreadLocalAccessorTable() {
+        return this.threadLocalAccessorTable;
     }
 
     @Override
     public String toString() {
         return "ContextRegistry{" +
                 "contextAccessors=" + this.contextAccessors + ", " +
-                "threadLocalAccessors=" + this.threadLocalAccessors + "}";
+                "threadLocalAccessors=" + this.threadLocalAccessorTable + "}";
     }
 
 
@@ -167,4 +289,55 @@ public class ContextRegistry {
         return instance;
     }
 
+
+    /**
+     * Cache of {@link ContextAccessor} lookups by context type, including the
+     * absence of a match, cached as a sentinel so that a miss costs no more
+     * than a hit; only the public lookup methods turn it into an exception.
+     * Registering a {@code ContextAccessor} replaces the cache with a new
+     * instance, and the previous one is then discarded along with any result
+     * computed against the previous set of accessors.
+     */
+    private final class ContextAccessorCache {
+
+        private final ClassValue<Object> readAccessors = new ClassValue<Object>() {
+
+            @Override
+            protected Object computeValue(Class<?> contextType) {
+                for (ContextAccessor<?, ?> accessor : contextAccessors) {
+                    if (accessor.canReadFrom(contextType)) {
+                        return accessor;
+                    }
+                }
+                return NO_CONTEXT_ACCESSOR;
+            }
+        };
+
+        private final ClassValue<Object> writeAccessors = new ClassValue<Object>() {
+
+            @Override
+            protected Object computeValue(Class<?> contextType) {
+                for (ContextAccessor<?, ?> accessor : contextAccessors) {
+                    if (accessor.canWriteTo(contextType)) {
+                        return accessor;
+                    }
+                }
+                return NO_CONTEXT_ACCESSOR;
+            }
+        };
+
+        @Nullable
+        ContextAccessor<?, ?> getReadAccessor(Class<?> contextType) {
+            Object accessor = this.readAccessors.get(contextType);
+            return (accessor != NO_CONTEXT_ACCESSOR ? (ContextAccessor<?, ?>) accessor : null);
+        }
+
+        @Nullable
+        ContextAccessor<?, ?> getWriteAccessor(Class<?> contextType) {
+            Object accessor = this.writeAccessors.get(contextType);
+            return (accessor != NO_CONTEXT_ACCESSOR ? (ContextAccessor<?, ?>) accessor : null);
+        }
+
+    }
+
 }
@@ -15,11 +15,20 @@
  */
 package io.micrometer.context;
 
+import java.util.Spliterator;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Holds values extracted from {@link ThreadLocal} and other types of context and
@@ -108,6 +117,111 @@ public interface ContextSnapshot {
         };
     }
 
+    /**
+     * Return a new {@code BiConsumer} that sets {@code ThreadLocal} values from
+     * the snapshot around the invocation of the given {@code BiConsumer}.
+     * @param consumer the consumer to instrument
+     * @param <T> the type of the first argument to the {@code BiConsumer}
+     * @param <U> the type of the second argument to the {@code BiConsumer}
+     */
+    default <T, U> BiConsumer<T, U> instrumentBiConsumer(BiConsumer<T, U> consumer) {
+        return (t, u) -> {
+            try (Scope scope = setThreadLocalValues()) {
+                consumer.accept(t, u);
+            }
+        };
+    }
+
+    /**
+     * Return a new {@code Supplier} that sets {@code ThreadLocal} values from
+     * the snapshot around the invocation of the given {@code Supplier}.
+     * @param supplier the supplier to instrument
+     * @param <T> the type of value produced by the {@code Supplier}
+     */
+    default <T> Supplier<T> instrumentSupplier(Supplier<T> supplier) {
+        return () -> {
+            try (Scope scope = setThreadLocalValues()) {
+                return supplier.get();
+            }
+        };
+    }
+
+    /**
+     * Return a new {@code Function} that sets {@code ThreadLocal} values from
+     * the snapshot around the invocation of the given {@code Function}.
+     * @param function the function to instrument
+     * @param <T> the type of the input to the {@code Function}
+     * @param <R> the type of the result of the {@code Function}
+     */
+    default <T, R> Function<T, R> instrumentFunction(Function<T, R> function) {
+        return value -> {
+            try (Scope scope = setThreadLocalValues()) {
+                return function.apply(value);
+            }
+        };
+    }
+
+    /**
+     * Return a new {@code BiFunction} that sets {@code ThreadLocal} values from
+     * the snapshot around the invocation of the given {@code BiFunction}.
+     * @param function the function to instrument
+     * @param <T> the type of the first argument to the {@code BiFunction}
+     * @param <U> the type of the second argument to the {@code BiFunction}
+     * @param <R> the type of the result of the {@code BiFunction}
+     */
+    default <T, U, R> BiFunction<T, U, R> instrumentBiFunction(BiFunction<T, U, R> function) {
+        return (t, u) -> {
+            try (Scope scope = setThreadLocalValues()) {
+                return function.apply(t, u);
+            }
+        };
+    }
+
+    /**
+     * Return a new {@code CompletionStage} that sets {@code ThreadLocal} values
+     * from the snapshot around the functions passed to any of its methods, and
+     * returns dependent stages that do the same. The snapshot is captured once
+     * for the whole chain, rather than for each stage, and a stage that runs on
+     * a thread where the values are already set, e.g. the thread that built the
+     * chain, neither sets nor restores them.
+     * <p>{@code toCompletableFuture()} on any of the returned stages returns
+     * the underlying {@code CompletableFuture}, which is not instrumented.
+     * @param stage the stage to instrument
+     * @param <T> the type of value of the {@code CompletionStage}
+     */
+    default <T> CompletionStage<T> instrumentCompletionStage(CompletionStage<T> stage) {
+        return new InstrumentedCompletionStage<>(stage, this);
+    }
+
+    /**
+     * Return a new {@code Spliterator} that sets {@code ThreadLocal} values
+     * from the snapshot around the traversal of the given {@code Spliterator},
+     * and of every split of it. Values are set once for each call to
+     * {@code forEachRemaining}, which a parallel stream makes once per split,
+     * rather than once per element. Short-circuiting stream operations, such
+     * as {@code anyMatch} or {@code findFirst}, traverse with
+     * {@code tryAdvance} instead, and values are then set for each element.
+     * @param spliterator the spliterator to instrument
+     * @param <T> the type of elements returned by the {@code Spliterator}
+     */
+    default <T> Spliterator<T> instrumentSpliterator(Spliterator<T> spliterator) {
+        return new InstrumentedSpliterator<>(spliterator, this);
+    }
+
+    /**
+     * Return a new {@code Stream} over the elements of the given stream, through
+     * {@link #instrumentSpliterator(Spliterator)}, so that operations added to
+     * it run with {@code ThreadLocal} values from the snapshot, including on
+     * other threads when the stream is parallel. This is a terminal operation
+     * for the given stream, which is closed when the returned one is closed.
+     * @param stream the stream to instrument
+     * @param <T> the type of the stream elements
+     */
+    default <T> Stream<T> instrumentStream(Stream<T> stream) {
+        return StreamSupport.stream(instrumentSpliterator(stream.spliterator()), stream.isParallel())
+                .onClose(stream::close);
+    }
+
     /**
      * Return a new {@code Executor} that sets {@code ThreadLocal} values from
      * the snapshot around the invocation of any executed, {@code Runnable}.
@@ -129,6 +243,17 @@ public interface ContextSnapshot {
         return new InstrumentedExecutorService(executorService, this);
     }
 
+    /**
+     * Return a new {@code ScheduledExecutorService} that sets {@code ThreadLocal}
+     * values from the snapshot around the invocation of any executed or
+     * scheduled task. A periodic task is instrumented once, when scheduled,
+     * and not for each run.
+     * @param executorService the executorService to instrument
+     */
+    default ScheduledExecutorService instrumentScheduledExecutorService(ScheduledExecutorService executorService) {
+        return new InstrumentedScheduledExecutorService(executorService, this);
+    }
+
 
     /**
      * Capture values from {@link ThreadLocal} and from other context objects
@@ -159,6 +284,7 @@ public interface ContextSnapshot {
      * @param keyPredicate predicate for context value keys
      * @param contexts one more context objects to extract values from
      * @return a snapshot with saved context values
+     * @see ContextCapturer
      */
     static ContextSnapshot capture(
             ContextRegistry contextRegistry, Predicate<Object> keyPredicate, Object... contexts) {
@@ -166,6 +292,36 @@ public interface ContextSnapshot {
         return DefaultContextSnapshot.capture(contextRegistry, keyPredicate, contexts);
     }
 
+    /**
+     * Variant of {@link #capture(Predicate, Object...)} that captures
+     * {@link ThreadLocal} values immediately, but defers reading values from
+     * the given contexts until the snapshot is used, if ever. This is useful
+     * when many snapshots are never used, e.g. when a Reactor operator
+     * completes synchronously.
+     * <p><strong>Note:</strong> the given contexts must be immutable, such as
+     * a Reactor {@code ContextView}, since they are read at a later time.
+     * @param keyPredicate predicate for context value keys
+     * @param contexts one more immutable context objects to extract values from
+     * @return a snapshot with saved context values
+     */
+    static ContextSnapshot captureLazily(Predicate<Object> keyPredicate, Object... contexts) {
+        return captureLazily(ContextRegistry.getInstance(), keyPredicate, contexts);
+    }
+
+    /**
+     * Variant of {@link #captureLazily(Predicate, Object...)} with a specific
+     * {@link ContextRegistry} instead of the global instance.
+     * @param contextRegistry the {@code ContextRegistry} instance to use
+     * @param keyPredicate predicate for context value keys
+     * @param contexts one more immutable context objects to extract values from
+     * @return a snapshot with saved context values
+     */
+    static ContextSnapshot captureLazily(
+            ContextRegistry contextRegistry, Predicate<Object> keyPredicate, Object... contexts) {
+
+        return LazyContextSnapshot.capture(contextRegistry, keyPredicate, contexts);
+    }
+
 
     /**
      * An object to use to reset {@link ThreadLocal} values at the end of a
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Default implementation of {@link ContextCapturer}.
+ *
+ * @since 1.0.0
+ */
+final class DefaultContextCapturer implements ContextCapturer {
+
+    private final ContextRegistry contextRegistry;
+
+    private final Predicate<Object> keyPredicate;
+
+    @Nullable
+    private final Set<?> keys;
+
+    private final Class<?>[] contextTypes;
+
+    private volatile CapturePlan plan;
+
+
+    DefaultContextCapturer(ContextRegistry contextRegistry, Predicate<Object> keyPredicate, Class<?>[] contextTypes) {
+        this(contextRegistry, keyPredicate, null, contextTypes);
+    }
+
+    DefaultContextCapturer(ContextRegistry contextRegistry, Set<?> keys, Class<?>[] contextTypes) {
+        this(contextRegistry, keys::contains, keys, contextTypes);
+    }
+
+    private DefaultContextCapturer(
+            ContextRegistry contextRegistry, Predicate<Object> keyPredicate, @Nullable Set<?> keys,
+            Class<?>[] contextTypes) {
+
+        this.contextRegistry = contextRegistry;
+        this.keyPredicate = keyPredicate;
+        this.keys = keys;
+        this.contextTypes = contextTypes.clone();
+        this.plan = new CapturePlan();
+    }
+
+
+    @Override
+    public ContextSnapshot capture() {
+        CapturePlan plan = getPlan();
+        return DefaultContextSnapshot.captureThreadLocalValues(
+                this.contextRegistry, plan.table, this.keyPredicate, plan.slots);
+    }
+
+    /**
+     * Variant of {@link #capture()} that returns the given, previous snapshot
+     * instead of a new one, if it has the current ThreadLocal values for the
+     * same accessors, see
+     * {@link DefaultContextSnapshot#hasCurrentThreadLocalValues}. With
+     * change-tracked accessors, the last snapshot of the thread is reused
+     * the same way as for {@link #capture()}, without comparing values.
+     * @param previous a snapshot from an earlier call on the same thread
+     */
+    ContextSnapshot captureOrReuse(@Nullable ContextSnapshot previous) {
+        CapturePlan plan = getPlan();
+        if (plan.table.isChangeTracked()) {
+            return DefaultContextSnapshot.captureThreadLocalValues(
+                    this.contextRegistry, plan.table, this.keyPredicate, plan.slots);
+        }
+        if (previous instanceof DefaultContextSnapshot &&
+                ((DefaultContextSnapshot) previous).hasCurrentThreadLocalValues(plan.table, plan.slots)) {
+            return DefaultContextSnapshot.snapshotCaptured(this.contextRegistry, previous);
+        }
+        return DefaultContextSnapshot.create(this.contextRegistry, plan.table, plan.readThreadLocalValues());
+    }
+
+    @Override
+    public ContextSnapshot capture(Object context) {
+        CapturePlan plan = getPlan();
+        DefaultContextSnapshot.Builder builder =
+                new DefaultContextSnapshot.Builder(this.contextRegistry, plan.table, plan.readThreadLocalValues());
+        readValues(builder, plan.getContextAccessor(context), context);
+        return builder.build();
+    }
+
+    @Override
+    public ContextSnapshot capture(Object... contexts) {
+        CapturePlan plan = getPlan();
+        if (contexts.length == 0) {
+            return DefaultContextSnapshot.captureThreadLocalValues(
+                    this.contextRegistry, plan.table, this.keyPredicate, plan.slots);
+        }
+        DefaultContextSnapshot.Builder builder =
+                new DefaultContextSnapshot.Builder(this.contextRegistry, plan.table, plan.readThreadLocalValues());
+        for (Object context : contexts) {
+            readValues(builder, plan.getContextAccessor(context), context);
+        }
+        return builder.build();
+    }
+
+    private void readValues(DefaultContextSnapshot.Builder builder, ContextAccessor<?, ?> accessor, Object context) {
+        if (this.keys != null) {
+            builder.readValues(accessor, context, this.keys);
+        }
+        else {
+            builder.readValues(accessor, context, this.keyPredicate);
+        }
+    }
+
+    private CapturePlan getPlan() {
+        CapturePlan plan = this.plan;
+        if (plan.version != this.contextRegistry.getVersion()) {
+            plan = new CapturePlan();
+            this.plan = plan;
+        }
+        return plan;
+    }
+
+    @Override
+    public String toString() {
+        return "DefaultContextCapturer{contextTypes=" + Arrays.toString(this.contextTypes) + "}";
+    }
+
+
+    /**
+     * Accessors resolved against a given version of the registry.
+     */
+    private final class CapturePlan {
+
+        private final int version;
+
+        private final ThreadLocalAccessorTable table;
+
+        private final int[] slots;
+
+        private final ContextAccessor<?, ?>[] contextAccessors;
+
+        CapturePlan() {
+            // read the version first, so accessors are at least as recent
+            this.version = contextRegistry.getVersion();
+            this.table = contextRegistry.getThreadLocalAccessorTable();
+            int[] slots = new int[this.table.size()];
+            int count = 0;
+            for (int slot = 0; slot < this.table.size(); slot++) {
+                if (keyPredicate.test(this.table.key(slot))) {
+                    slots[count++] = slot;
+                }
+            }
+            this.slots = Arrays.copyOf(slots, count);
+            this.contextAccessors = new ContextAccessor<?, ?>[contextTypes.length];
+            for (int i = 0; i < contextTypes.length; i++) {
+                this.contextAccessors[i] = contextRegistry.findContextAccessorForRead(contextTypes[i]);
+            }
+        }
+
+        @Nullable
+        Object[] readThreadLocalValues() {
+            return DefaultContextSnapshot.readThreadLocalValues(this.table, this.slots);
+        }
+
+        ContextAccessor<?, ?> getContextAccessor(Object context) {
+            for (int i = 0; i < contextTypes.length; i++) {
+                if (this.contextAccessors[i] != null && contextTypes[i].isInstance(context)) {
+                    return this.contextAccessors[i];
+                }
+            }
+            return contextRegistry.getContextAccessorForRead(context);
+        }
+    }
+
+}
@@ -15,44 +15,86 @@
  */
 package io.micrometer.context;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.function.Predicate;
 
 /**
  * Default implementation of {@link ContextSnapshot}.
  *
+ * <p>Values for keys of registered {@link ThreadLocalAccessor}'s are held in an
+ * array indexed by the accessor slot in the {@link ThreadLocalAccessorTable},
+ * so they are restored without any key lookups. Values for other keys, which
+ * can only come from other types of context, are held in a second array with
+ * keys at even and values at odd indexes. Neither array is modified after
+ * construction, and since they are assigned to final fields, a snapshot can be
+ * shared with other threads without further synchronization.
+ *
  * @author Rossen Stoyanchev
  * @since 1.0.0
  */
-final class DefaultContextSnapshot extends HashMap<Object, Object> implements ContextSnapshot {
+final class DefaultContextSnapshot implements ContextSnapshot {
+
+    private static final Object[] EMPTY_VALUES = new Object[0];
+
+    private static final Scope NOOP_SCOPE = () -> { };
 
-    private static final ContextSnapshot emptyContextSnapshot = new DefaultContextSnapshot(new ContextRegistry());
+    private static final Predicate<Object> ALL_KEYS = key -> true;
 
     private final ContextRegistry accessorRegistry;
 
+    private final ThreadLocalAccessorTable accessorTable;
+
+    private final Object[] slotValues;
+
+    private final Object[] keyValues;
+
+    private final int keyValueCount;
+
+    private final int size;
+
+
+    private DefaultContextSnapshot(
+            ContextRegistry accessorRegistry, ThreadLocalAccessorTable accessorTable,
+            Object[] slotValues, Object[] keyValues, int keyValueCount, int size) {
 
-    DefaultContextSnapshot(ContextRegistry accessorRegistry) {
         this.accessorRegistry = accessorRegistry;
+        this.accessorTable = accessorTable;
+        this.slotValues = slotValues;
+        this.keyValues = keyValues;
+        this.keyValueCount = keyValueCount;
+        this.size = size;
     }
 
 
     @Override
     public <C> C updateContext(C context) {
-        return updateContextInternal(context, this);
+        return (this.size > 0 ? updateContextInternal(context, new ValuesMap(this)) : context);
     }
 
     @Override
     public <C> C updateContext(C context, Predicate<Object> keyPredicate) {
-        if (!isEmpty()) {
-            Map<Object, Object> valuesToWrite = new HashMap<>();
-            forEach((key, value) -> {
+        if (this.size > 0) {
+            Builder valuesToWrite = new Builder(this.accessorRegistry, this.accessorTable, null);
+            for (int slot = 0; slot < this.slotValues.length; slot++) {
+                Object value = this.slotValues[slot];
+                if (value != null && keyPredicate.test(this.accessorTable.key(slot))) {
+                    valuesToWrite.putSlotValue(slot, value);
+                }
+            }
+            for (int i = 0; i < this.keyValueCount; i++) {
+                Object key = this.keyValues[i << 1];
                 if (keyPredicate.test(key)) {
-                    valuesToWrite.put(key, value);
+                    valuesToWrite.putKeyValue(key, this.keyValues[(i << 1) + 1]);
                 }
-            });
+            }
             context = updateContextInternal(context, valuesToWrite);
         }
         return context;
@@ -60,103 +102,875 @@ final class DefaultContextSnapshot extends HashMap<Object, Object> implements Co
 
     @SuppressWarnings("unchecked")
     private <C> C updateContextInternal(C context, Map<Object, Object> valueContainer) {
-        if (!isEmpty()) {
+        if (!valueContainer.isEmpty()) {
             ContextAccessor<?, ?> accessor = this.accessorRegistry.getContextAccessorForWrite(context);
             context = ((ContextAccessor<?, C>) accessor).writeValues(valueContainer, context);
+            ContextPropagationListener listener = this.accessorRegistry.getPropagationListener();
+            if (listener != null) {
+                listener.contextUpdated(valueContainer.size());
+            }
         }
         return context;
     }
 
     @Override
     public Scope setThreadLocalValues() {
-        return setThreadLocalValues(key -> true);
+        return setThreadLocalValues(ALL_KEYS);
     }
 
     @Override
     public Scope setThreadLocalValues(Predicate<Object> keyPredicate) {
-        Set<Object> keys = null;
-        Map<Object, Object> previousValues = null;
-        for (ThreadLocalAccessor<?> accessor : this.accessorRegistry.getThreadLocalAccessors()) {
-            Object key = accessor.key();
-            if (keyPredicate.test(key) && containsKey(key)) {
-                keys = (keys != null ? keys : new HashSet<>());
-                keys.add(key);
+        return setThreadLocalValues(keyPredicate, NOOP_SCOPE);
+    }
+
+    /**
+     * Set values, and add accessors and previous values to the given scope,
+     * which is returned unless it is the no-op scope and a new one is needed.
+     */
+    private Scope setThreadLocalValues(Predicate<Object> keyPredicate, Scope scope) {
+        Object event = ContextEvents.beginSetThreadLocalValues();
+        ThreadLocalAccessorTable table = this.accessorRegistry.getThreadLocalAccessorTable();
+        ContextPropagationListener listener = this.accessorRegistry.getPropagationListener();
+        GroupValuesWriter groupWriter = null;
+        for (int slot = 0; slot < this.slotValues.length; slot++) {
+            Object value = this.slotValues[slot];
+            if (value != null && keyPredicate.test(table.key(slot))) {
+                GroupedThreadLocalAccessor group = table.group(slot);
+                if (group == null) {
+                    scope = setThreadLocalValue(table.get(slot), value, scope, listener);
+                }
+                else {
+                    groupWriter = (groupWriter != null ? groupWriter : new GroupValuesWriter(listener));
+                    scope = groupWriter.write(group, table.groupIndex(slot), value, scope);
+                }
+            }
+        }
+        if (table != this.accessorTable) {
+            // Captured against an earlier version: slots are still valid, but
+            // accessors registered since may match values of other keys
+            for (int i = 0; i < this.keyValueCount; i++) {
+                Object key = this.keyValues[i << 1];
+                int slot = table.slotOf(key);
+                if (slot >= 0 && keyPredicate.test(key)) {
+                    Object value = this.keyValues[(i << 1) + 1];
+                    GroupedThreadLocalAccessor group = table.group(slot);
+                    if (group == null) {
+                        scope = setThreadLocalValue(table.get(slot), value, scope, listener);
+                    }
+                    else {
+                        groupWriter = (groupWriter != null ? groupWriter : new GroupValuesWriter(listener));
+                        scope = groupWriter.write(group, table.groupIndex(slot), value, scope);
+                    }
+                }
+            }
+        }
+        scope = (groupWriter != null ? groupWriter.flush(scope) : scope);
+        if (event != null) {
+            scopeSetEvents(scope, event);
+        }
+        if (scope != NOOP_SCOPE) {
+            ScopeLeakDetector leakDetector = this.accessorRegistry.getScopeLeakDetector();
+            if (leakDetector != null && leakDetector.shouldSample()) {
+                scope = leakDetector.track(scope, keysOf(scope));
+            }
+        }
+        return scope;
+    }
+
+    private static Set<Object> keysOf(Scope scope) {
+        return (scope instanceof SingleValueScope ?
+                Collections.singleton(((SingleValueScope) scope).accessor.key()) : ((DefaultScope) scope).keys());
+    }
+
+    /**
+     * Record Flight Recorder events for setting values, and begin one for the
+     * returned scope, ended when it is closed, see {@link ContextEvents}.
+     */
+    private void scopeSetEvents(Scope scope, Object event) {
+        int accessorCount = 0;
+        if (scope instanceof SingleValueScope) {
+            accessorCount = 1;
+            ((SingleValueScope) scope).event = ContextEvents.beginScope();
+        }
+        else if (scope instanceof DefaultScope) {
+            accessorCount = ((DefaultScope) scope).count;
+            ((DefaultScope) scope).event = ContextEvents.beginScope();
+        }
+        ContextEvents.endSetThreadLocalValues(event, this.accessorRegistry, this.size, accessorCount);
+    }
 
-                Object previousValue = accessor.getValue();
-                previousValues = (previousValues != null ? previousValues : new HashMap<>());
-                previousValues.put(key, previousValue);
+    /**
+     * Variant of {@link #setThreadLocalValues()} for a thread that starts
+     * without values, and ends when the task is done, e.g. a virtual thread
+     * per task. Values are set without reading previous values first, and
+     * there is no {@link Scope} to restore them.
+     */
+    void setThreadLocalValuesOnNewThread() {
+        ThreadLocalAccessorTable table = this.accessorRegistry.getThreadLocalAccessorTable();
+        if (table != this.accessorTable) {
+            // accessors registered since capture may match values of other keys
+            setThreadLocalValues();
+            return;
+        }
+        GroupedThreadLocalAccessor group = null;
+        Object[] groupValues = EMPTY_VALUES;
+        for (int slot = 0; slot < this.slotValues.length; slot++) {
+            Object value = this.slotValues[slot];
+            if (value == null) {
+                continue;
+            }
+            GroupedThreadLocalAccessor slotGroup = table.group(slot);
+            if (slotGroup == null) {
+                setThreadLocalValue(table.get(slot), value);
+                continue;
+            }
+            if (slotGroup != group) {
+                if (group != null) {
+                    group.setValues(groupValues);
+                }
+                group = slotGroup;
+                groupValues = new Object[group.keys().size()];
+                group.getValues(groupValues);
+            }
+            groupValues[table.groupIndex(slot)] = value;
+        }
+        if (group != null) {
+            group.setValues(groupValues);
+        }
+    }
 
-                setThreadLocalValue(key, accessor);
+    /**
+     * Variant of {@link #instrumentRunnable(Runnable)} for a periodic task.
+     * Runs of a periodic task do not overlap, and so the returned
+     * {@code Runnable} reuses one {@link Scope} across runs, sized when the
+     * task is scheduled, rather than allocating a new one for each run.
+     */
+    Runnable instrumentPeriodicRunnable(Runnable runnable) {
+        if (this.size == 0) {
+            return runnable;
+        }
+        DefaultScope reusableScope = new DefaultScope(this.size, this.accessorRegistry.getPropagationListener());
+        return () -> {
+            try (Scope scope = setThreadLocalValues(ALL_KEYS, reusableScope)) {
+                runnable.run();
             }
+        };
+    }
+
+    /**
+     * Variant of {@link #instrumentPeriodicRunnable(Runnable)} for a snapshot
+     * created in this package, or by another implementation of
+     * {@link ContextSnapshot}, which falls back on
+     * {@link ContextSnapshot#instrumentRunnable(Runnable)}.
+     */
+    static Runnable instrumentPeriodicRunnable(ContextSnapshot snapshot, Runnable runnable) {
+        if (snapshot instanceof LazyContextSnapshot) {
+            snapshot = ((LazyContextSnapshot) snapshot).getDelegate();
         }
-        return (keys != null ? new DefaultScope(keys, previousValues) : () -> { });
+        return (snapshot instanceof DefaultContextSnapshot ?
+                ((DefaultContextSnapshot) snapshot).instrumentPeriodicRunnable(runnable) :
+                snapshot.instrumentRunnable(runnable));
     }
 
     @SuppressWarnings("unchecked")
-    private <V> void setThreadLocalValue(Object key, ThreadLocalAccessor<?> accessor) {
-        ((ThreadLocalAccessor<V>) accessor).setValue((V) get(key));
+    private static <V> void setThreadLocalValue(ThreadLocalAccessor<V> accessor, Object value) {
+        accessor.setValue((V) value);
     }
 
+    /**
+     * Set the value, and add the accessor and its previous value to the given
+     * scope, or to a new one if the given scope is the no-op scope. If the
+     * current value is the same instance, e.g. after a same-thread handoff,
+     * the value is neither set nor later restored.
+     */
     @SuppressWarnings("unchecked")
+    private <V> Scope setThreadLocalValue(
+            ThreadLocalAccessor<V> accessor, Object value, Scope scope, @Nullable ContextPropagationListener listener) {
+
+        long startTime = (listener != null ? System.nanoTime() : 0);
+        V previousValue = accessor.getValue();
+        if (previousValue == value) {
+            return scope;
+        }
+        accessor.setValue((V) value);
+        if (listener != null) {
+            listener.threadLocalValueSet(accessor.key(), System.nanoTime() - startTime);
+        }
+        if (scope == NOOP_SCOPE) {
+            if (this.size == 1) {
+                return new SingleValueScope(accessor, previousValue, listener);
+            }
+            scope = new DefaultScope(this.size, listener);
+        }
+        ((DefaultScope) scope).add(accessor, previousValue);
+        return scope;
+    }
+
     static ContextSnapshot capture(
             ContextRegistry contextRegistry, Predicate<Object> keyPredicate, Object... contexts) {
 
-        DefaultContextSnapshot snapshot = null;
-        for (ThreadLocalAccessor<?> accessor : contextRegistry.getThreadLocalAccessors()) {
-            if (keyPredicate.test(accessor.key())) {
-                Object value = accessor.getValue();
-                if (value != null) {
-                    snapshot = (snapshot != null ? snapshot : new DefaultContextSnapshot(contextRegistry));
-                    snapshot.put(accessor.key(), value);
+        Object event = ContextEvents.beginCapture();
+        ThreadLocalAccessorTable table = contextRegistry.getThreadLocalAccessorTable();
+        ContextSnapshot snapshot;
+        if (contexts.length == 0) {
+            snapshot = captureThreadLocalValues(contextRegistry, table, keyPredicate, null);
+        }
+        else {
+            Object[] slotValues = readThreadLocalValues(table, keyPredicate);
+            Builder builder = new Builder(contextRegistry, table, slotValues);
+            for (Object context : contexts) {
+                builder.readValues(contextRegistry.getContextAccessorForRead(context), context, keyPredicate);
+            }
+            snapshot = builder.build();
+        }
+        if (event != null) {
+            ContextEvents.endCapture(event, contextRegistry, sizeOf(snapshot), table.size());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Return the registry a snapshot created in this package was captured
+     * with, or {@code null} for another implementation of
+     * {@link ContextSnapshot}.
+     */
+    @Nullable
+    static ContextRegistry getContextRegistry(ContextSnapshot snapshot) {
+        if (snapshot instanceof LazyContextSnapshot) {
+            return ((LazyContextSnapshot) snapshot).getContextRegistry();
+        }
+        return (snapshot instanceof DefaultContextSnapshot ?
+                ((DefaultContextSnapshot) snapshot).accessorRegistry : null);
+    }
+
+    /**
+     * Create the snapshot without values for the given registry, which keeps
+     * it, so that a capture without values still refers to its registry.
+     */
+    static ContextSnapshot emptySnapshot(ContextRegistry contextRegistry) {
+        return new DefaultContextSnapshot(
+                contextRegistry, ThreadLocalAccessorTable.EMPTY, EMPTY_VALUES, EMPTY_VALUES, 0, 0);
+    }
+
+    private static int sizeOf(ContextSnapshot snapshot) {
+        return (snapshot instanceof DefaultContextSnapshot ? ((DefaultContextSnapshot) snapshot).size : 0);
+    }
+
+    /**
+     * Variant of {@link #capture(ContextRegistry, Predicate, Object...)} that
+     * reads all ThreadLocal values, and no other context.
+     * @return the snapshot, or {@code null} if no values were found
+     */
+    @Nullable
+    static DefaultContextSnapshot captureThreadLocalValues(ContextRegistry contextRegistry) {
+        ThreadLocalAccessorTable table = contextRegistry.getThreadLocalAccessorTable();
+        ContextSnapshot snapshot = captureThreadLocalValues(contextRegistry, table, ALL_KEYS, null);
+        return (snapshot != contextRegistry.getEmptyContextSnapshot() ? (DefaultContextSnapshot) snapshot : null);
+    }
+
+    /**
+     * Capture ThreadLocal values only. If all accessors are change-tracked,
+     * the last snapshot captured on the current thread with the same table and
+     * predicate is returned as long as no value has changed since, see
+     * {@link ChangeTrackedThreadLocalAccessor}.
+     * @param contextRegistry the registry to capture with
+     * @param table the table of accessors to read through
+     * @param keyPredicate predicate for the keys to read
+     * @param slots the slots to read, in ascending order, or {@code null}
+     * for all slots
+     */
+    static ContextSnapshot captureThreadLocalValues(
+            ContextRegistry contextRegistry, ThreadLocalAccessorTable table, Predicate<Object> keyPredicate,
+            @Nullable int[] slots) {
+
+        // slots, if given, are already selected with the predicate
+        Predicate<Object> slotPredicate = (slots != null ? ALL_KEYS : keyPredicate);
+        if (!table.isChangeTracked()) {
+            return create(contextRegistry, table, readThreadLocalValues(table, slots, slotPredicate));
+        }
+        ThreadLocalChangeTracker tracker = ThreadLocalChangeTracker.current();
+        ContextSnapshot snapshot = tracker.getSnapshot(table, keyPredicate);
+        if (snapshot == null) {
+            snapshot = create(contextRegistry, table, readThreadLocalValues(table, slots, slotPredicate));
+            tracker.setSnapshot(table, keyPredicate, snapshot);
+            return snapshot;
+        }
+        return snapshotCaptured(contextRegistry, snapshot);
+    }
+
+    /**
+     * Variant of {@link #capture(ContextRegistry, Predicate, Object...)} that
+     * reads the values for the keys of registered ThreadLocal accessors from
+     * the given context only, and not from ThreadLocal's.
+     * @return the snapshot, or {@code null} if no values were found, or no
+     * registered {@code ContextAccessor} can read the context
+     */
+    @Nullable
+    static ContextSnapshot captureContext(ContextRegistry contextRegistry, Object context) {
+        ContextAccessor<?, ?> accessor = contextRegistry.findContextAccessorForRead(context.getClass());
+        if (accessor == null) {
+            return null;
+        }
+        ThreadLocalAccessorTable table = contextRegistry.getThreadLocalAccessorTable();
+        Builder builder = new Builder(contextRegistry, table, null);
+        builder.readValues(accessor, context, table.keySet());
+        return (builder.size > 0 ? builder.build() : null);
+    }
+
+    /**
+     * Read the values of selected ThreadLocal's into an array by slot.
+     * @param table the table of accessors to read through
+     * @param keyPredicate predicate for the keys to read
+     * @return the values by slot, or {@code null} if no values were found
+     */
+    @Nullable
+    static Object[] readThreadLocalValues(ThreadLocalAccessorTable table, Predicate<Object> keyPredicate) {
+        return readThreadLocalValues(table, null, keyPredicate);
+    }
+
+    /**
+     * Variant of {@link #readThreadLocalValues(ThreadLocalAccessorTable, Predicate)}
+     * with the slots to read selected upfront.
+     * @param table the table of accessors to read through
+     * @param slots the slots to read, in ascending order
+     * @return the values by slot, or {@code null} if no values were found
+     */
+    @Nullable
+    static Object[] readThreadLocalValues(ThreadLocalAccessorTable table, int[] slots) {
+        return readThreadLocalValues(table, slots, ALL_KEYS);
+    }
+
+    @Nullable
+    private static Object[] readThreadLocalValues(
+            ThreadLocalAccessorTable table, @Nullable int[] slots, Predicate<Object> keyPredicate) {
+
+        Object[] slotValues = null;
+        GroupedThreadLocalAccessor group = null;
+        Object[] groupValues = null;
+        int count = (slots != null ? slots.length : table.size());
+        for (int i = 0; i < count; i++) {
+            int slot = (slots != null ? slots[i] : i);
+            if (!keyPredicate.test(table.key(slot))) {
+                continue;
+            }
+            Object value;
+            GroupedThreadLocalAccessor slotGroup = table.group(slot);
+            if (slotGroup == null) {
+                value = table.get(slot).getValue();
+            }
+            else {
+                if (slotGroup != group) {
+                    // read the whole group once, for all of its slots
+                    group = slotGroup;
+                    groupValues = new Object[group.keys().size()];
+                    group.getValues(groupValues);
                 }
+                value = groupValues[table.groupIndex(slot)];
             }
+            if (value != null) {
+                slotValues = (slotValues != null ? slotValues : new Object[table.size()]);
+                slotValues[slot] = value;
+            }
+        }
+        return slotValues;
+    }
+
+    /**
+     * Whether this snapshot has ThreadLocal values only, captured against the
+     * given table, and those are the same instances as the current values of
+     * the given slots, in which case it can be used in place of a new capture
+     * of the same slots.
+     * @param table the current table of accessors
+     * @param slots the slots to compare, in ascending order
+     */
+    boolean hasCurrentThreadLocalValues(ThreadLocalAccessorTable table, int[] slots) {
+        if (table != this.accessorTable || this.keyValueCount != 0) {
+            return false;
         }
-        for (Object context : contexts) {
-            ContextAccessor<?, ?> accessor = contextRegistry.getContextAccessorForRead(context);
-            snapshot = (snapshot != null ? snapshot : new DefaultContextSnapshot(contextRegistry));
-            ((ContextAccessor<Object, ?>) accessor).readValues(context, keyPredicate, snapshot);
+        int count = 0;
+        GroupedThreadLocalAccessor group = null;
+        Object[] groupValues = null;
+        for (int slot : slots) {
+            Object value;
+            GroupedThreadLocalAccessor slotGroup = table.group(slot);
+            if (slotGroup == null) {
+                value = table.get(slot).getValue();
+            }
+            else {
+                if (slotGroup != group) {
+                    group = slotGroup;
+                    groupValues = new Object[group.keys().size()];
+                    group.getValues(groupValues);
+                }
+                value = groupValues[table.groupIndex(slot)];
+            }
+            if (value != (slot < this.slotValues.length ? this.slotValues[slot] : null)) {
+                return false;
+            }
+            count += (value != null ? 1 : 0);
         }
-        return (snapshot != null ? snapshot : emptyContextSnapshot);
+        return (count == this.size);
+    }
+
+    /**
+     * Create a snapshot from ThreadLocal values captured by slot.
+     * @param contextRegistry the registry the values were captured with
+     * @param table the table the values were captured against
+     * @param slotValues values by slot, or {@code null} if none were found
+     */
+    static ContextSnapshot create(
+            ContextRegistry contextRegistry, ThreadLocalAccessorTable table, @Nullable Object[] slotValues) {
+
+        if (slotValues == null) {
+            return snapshotCaptured(contextRegistry, contextRegistry.getEmptyContextSnapshot());
+        }
+        int size = 0;
+        for (Object value : slotValues) {
+            size += (value != null ? 1 : 0);
+        }
+        return snapshotCaptured(contextRegistry,
+                new DefaultContextSnapshot(contextRegistry, table, slotValues, EMPTY_VALUES, 0, size));
+    }
+
+    /**
+     * Notify the {@link ContextPropagationListener} of the registry, if any,
+     * of a captured snapshot, including one reused from an earlier capture.
+     * @return the same snapshot
+     */
+    static ContextSnapshot snapshotCaptured(ContextRegistry contextRegistry, ContextSnapshot snapshot) {
+        ContextPropagationListener listener = contextRegistry.getPropagationListener();
+        if (listener != null) {
+            listener.snapshotCaptured(snapshot instanceof DefaultContextSnapshot ?
+                    ((DefaultContextSnapshot) snapshot).size : 0);
+        }
+        return snapshot;
+    }
+
+    private static int indexOf(Object[] keyValues, int count, Object key) {
+        for (int i = 0; i < count; i++) {
+            if (keyValues[i << 1].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     @Override
     public String toString() {
-        return "DefaultContextSnapshot" + super.toString();
+        return "DefaultContextSnapshot" + new ValuesMap(this);
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private static <V> void resetThreadLocalValue(ThreadLocalAccessor<?> accessor, @Nullable V previousValue) {
+        if (previousValue != null) {
+            ((ThreadLocalAccessor<V>) accessor).setValue(previousValue);
+        }
+        else {
+            accessor.reset();
+        }
     }
 
 
     /**
-     * Default implementation of {@link Scope}.
+     * {@link Scope} for a snapshot with a single value, which saves the
+     * allocation of an array.
      */
-    private class DefaultScope implements Scope {
+    private static final class SingleValueScope implements Scope {
+
+        private final ThreadLocalAccessor<?> accessor;
+
+        @Nullable
+        private final Object previousValue;
 
-        private final Set<Object> keys;
+        @Nullable
+        private final ContextPropagationListener listener;
 
-        private final Map<Object, Object> previousValues;
+        @Nullable
+        private Object event;
 
-        private DefaultScope(Set<Object> keys, Map<Object, Object> previousValues) {
-            this.keys = keys;
-            this.previousValues = previousValues;
+        private SingleValueScope(
+                ThreadLocalAccessor<?> accessor, @Nullable Object previousValue,
+                @Nullable ContextPropagationListener listener) {
+
+            this.accessor = accessor;
+            this.previousValue = previousValue;
+            this.listener = listener;
         }
 
         @Override
         public void close() {
-            for (ThreadLocalAccessor<?> accessor : accessorRegistry.getThreadLocalAccessors()) {
-                if (this.keys.contains(accessor.key())) {
-                    Object previousValue = this.previousValues.get(accessor.key());
-                    resetThreadLocalValue(accessor, previousValue);
+            if (this.listener == null) {
+                resetThreadLocalValue(this.accessor, this.previousValue);
+            }
+            else {
+                long startTime = System.nanoTime();
+                resetThreadLocalValue(this.accessor, this.previousValue);
+                this.listener.threadLocalValueRestored(this.accessor.key(), System.nanoTime() - startTime);
+            }
+            if (this.event != null) {
+                ContextEvents.endScope(this.event, 1);
+                this.event = null;
+            }
+        }
+    }
+
+
+    /**
+     * Default implementation of {@link Scope} with the accessors that were set,
+     * and their previous values, in a single array. Only those accessors are
+     * reset, and in reverse order. Once closed, it is empty and can be used
+     * again, see {@link #instrumentPeriodicRunnable(Runnable)}.
+     */
+    private static final class DefaultScope implements Scope {
+
+        private final Object[] accessorsAndPreviousValues;
+
+        @Nullable
+        private final ContextPropagationListener listener;
+
+        private int count;
+
+        @Nullable
+        private Object event;
+
+        private DefaultScope(int capacity, @Nullable ContextPropagationListener listener) {
+            this.accessorsAndPreviousValues = new Object[capacity << 1];
+            this.listener = listener;
+        }
+
+        void add(ThreadLocalAccessor<?> accessor, @Nullable Object previousValue) {
+            this.accessorsAndPreviousValues[this.count << 1] = accessor;
+            this.accessorsAndPreviousValues[(this.count << 1) + 1] = previousValue;
+            this.count++;
+        }
+
+        void add(GroupedThreadLocalAccessor group, Object[] previousValues) {
+            this.accessorsAndPreviousValues[this.count << 1] = new GroupReset(group);
+            this.accessorsAndPreviousValues[(this.count << 1) + 1] = previousValues;
+            this.count++;
+        }
+
+        Set<Object> keys() {
+            Set<Object> keys = new LinkedHashSet<>();
+            for (int i = 0; i < this.count; i++) {
+                Object accessor = this.accessorsAndPreviousValues[i << 1];
+                if (accessor instanceof GroupReset) {
+                    keys.addAll(((GroupReset) accessor).group.keys());
+                }
+                else {
+                    keys.add(((ThreadLocalAccessor<?>) accessor).key());
+                }
+            }
+            return keys;
+        }
+
+        @Override
+        public void close() {
+            for (int i = this.count - 1; i >= 0; i--) {
+                Object accessor = this.accessorsAndPreviousValues[i << 1];
+                Object previousValue = this.accessorsAndPreviousValues[(i << 1) + 1];
+                long startTime = (this.listener != null ? System.nanoTime() : 0);
+                if (accessor instanceof GroupReset) {
+                    ((GroupReset) accessor).reset((Object[]) previousValue);
+                }
+                else {
+                    resetThreadLocalValue((ThreadLocalAccessor<?>) accessor, previousValue);
+                }
+                if (this.listener != null) {
+                    Object key = (accessor instanceof GroupReset ?
+                            ((GroupReset) accessor).group.keys() : ((ThreadLocalAccessor<?>) accessor).key());
+                    this.listener.threadLocalValueRestored(key, System.nanoTime() - startTime);
+                }
+                this.accessorsAndPreviousValues[i << 1] = null;
+                this.accessorsAndPreviousValues[(i << 1) + 1] = null;
+            }
+            if (this.event != null) {
+                ContextEvents.endScope(this.event, this.count);
+                this.event = null;
+            }
+            this.count = 0;
+        }
+    }
+
+
+    /**
+     * Marks a {@link GroupedThreadLocalAccessor} in a {@link DefaultScope},
+     * since a previous value of a {@link ThreadLocalAccessor} could be an
+     * array too.
+     */
+    private static final class GroupReset {
+
+        private final GroupedThreadLocalAccessor group;
+
+        GroupReset(GroupedThreadLocalAccessor group) {
+            this.group = group;
+        }
+
+        void reset(Object[] previousValues) {
+            for (Object value : previousValues) {
+                if (value != null) {
+                    this.group.setValues(previousValues);
+                    return;
+                }
+            }
+            this.group.reset();
+        }
+    }
+
+
+    /**
+     * Collects values for the slots of a {@link GroupedThreadLocalAccessor},
+     * and writes them in one call. The slots of a group are usually next to
+     * each other, and a group is written when a slot of another group comes
+     * up, or at the end.
+     */
+    private final class GroupValuesWriter {
+
+        @Nullable
+        private final ContextPropagationListener listener;
+
+        @Nullable
+        private GroupedThreadLocalAccessor group;
+
+        private Object[] previousValues = EMPTY_VALUES;
+
+        private Object[] values = EMPTY_VALUES;
+
+        private boolean changed;
+
+        GroupValuesWriter(@Nullable ContextPropagationListener listener) {
+            this.listener = listener;
+        }
+
+        Scope write(GroupedThreadLocalAccessor group, int index, Object value, Scope scope) {
+            if (group != this.group) {
+                scope = flush(scope);
+                this.group = group;
+                this.previousValues = new Object[group.keys().size()];
+                group.getValues(this.previousValues);
+                this.values = this.previousValues.clone();
+            }
+            this.values[index] = value;
+            this.changed |= (this.previousValues[index] != value);
+            return scope;
+        }
+
+        Scope flush(Scope scope) {
+            if (this.group != null && this.changed) {
+                long startTime = (this.listener != null ? System.nanoTime() : 0);
+                this.group.setValues(this.values);
+                if (this.listener != null) {
+                    this.listener.threadLocalValueSet(this.group.keys(), System.nanoTime() - startTime);
+                }
+                scope = (scope != NOOP_SCOPE ? scope : new DefaultScope(size, this.listener));
+                ((DefaultScope) scope).add(this.group, this.previousValues);
+            }
+            this.group = null;
+            this.changed = false;
+            return scope;
+        }
+    }
+
+
+    /**
+     * Read-only {@link Map} view of snapshot values, values by slot first,
+     * and values for other keys next, to pass to
+     * {@link ContextAccessor#writeValues(Map, Object)}.
+     */
+    private static class ValuesMap extends AbstractMap<Object, Object> {
+
+        final ThreadLocalAccessorTable accessorTable;
+
+        Object[] slotValues;
+
+        Object[] keyValues;
+
+        int keyValueCount;
+
+        int size;
+
+        ValuesMap(DefaultContextSnapshot snapshot) {
+            this(snapshot.accessorTable, snapshot.slotValues, snapshot.keyValues, snapshot.keyValueCount,
+                    snapshot.size);
+        }
+
+        ValuesMap(ThreadLocalAccessorTable table, Object[] slotValues, Object[] keyValues, int keyValueCount,
+                int size) {
+
+            this.accessorTable = table;
+            this.slotValues = slotValues;
+            this.keyValues = keyValues;
+            this.keyValueCount = keyValueCount;
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return this.size;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return (get(key) != null);
+        }
+
+        @Override
+        @Nullable
+        public Object get(Object key) {
+            int slot = this.accessorTable.slotOf(key);
+            if (slot >= 0) {
+                return (slot < this.slotValues.length ? this.slotValues[slot] : null);
+            }
+            int index = indexOf(this.keyValues, this.keyValueCount, key);
+            return (index >= 0 ? this.keyValues[(index << 1) + 1] : null);
+        }
+
+        @Override
+        public Set<Entry<Object, Object>> entrySet() {
+            return new AbstractSet<Entry<Object, Object>>() {
+
+                @Override
+                public Iterator<Entry<Object, Object>> iterator() {
+                    return new ValuesIterator();
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+
+
+        private class ValuesIterator implements Iterator<Entry<Object, Object>> {
+
+            private int slot = nextSlot(0);
+
+            private int index;
+
+            private int nextSlot(int start) {
+                int next = start;
+                while (next < slotValues.length && slotValues[next] == null) {
+                    next++;
+                }
+                return next;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return (this.slot < slotValues.length || this.index < keyValueCount);
+            }
+
+            @Override
+            public Entry<Object, Object> next() {
+                if (this.slot < slotValues.length) {
+                    Entry<Object, Object> entry =
+                            new SimpleImmutableEntry<>(accessorTable.key(this.slot), slotValues[this.slot]);
+                    this.slot = nextSlot(this.slot + 1);
+                    return entry;
+                }
+                if (this.index < keyValueCount) {
+                    int i = this.index++ << 1;
+                    return new SimpleImmutableEntry<>(keyValues[i], keyValues[i + 1]);
+                }
+                throw new NoSuchElementException();
+            }
+        }
+    }
+
+
+    /**
+     * {@link ValuesMap} that also accepts new values, to pass to
+     * {@link ContextAccessor#readValues(Object, Predicate, Map)}, and then
+     * build a snapshot from. A value for an existing key replaces the previous
+     * value, as with any {@code Map}, while {@code null} values are ignored, as
+     * they are for ThreadLocal's.
+     */
+    static final class Builder extends ValuesMap {
+
+        private final ContextRegistry contextRegistry;
+
+        /**
+         * Create an instance.
+         * @param registry the registry to use
+         * @param table the table against which values are collected
+         * @param slotValues ThreadLocal values by slot, or {@code null} if none
+         */
+        Builder(ContextRegistry registry, ThreadLocalAccessorTable table, @Nullable Object[] slotValues) {
+            super(table, EMPTY_VALUES, EMPTY_VALUES, 0, 0);
+            this.contextRegistry = registry;
+            if (slotValues != null) {
+                this.slotValues = slotValues;
+                for (Object value : slotValues) {
+                    this.size += (value != null ? 1 : 0);
                 }
             }
         }
 
         @SuppressWarnings("unchecked")
-        private <V> void resetThreadLocalValue(ThreadLocalAccessor<?> accessor, @Nullable V previousValue) {
-            if (previousValue != null) {
-                ((ThreadLocalAccessor<V>) accessor).setValue(previousValue);
+        void readValues(ContextAccessor<?, ?> accessor, Object context, Predicate<Object> keyPredicate) {
+            ((ContextAccessor<Object, ?>) accessor).readValues(context, keyPredicate, this);
+        }
+
+        @SuppressWarnings("unchecked")
+        void readValues(ContextAccessor<?, ?> accessor, Object context, Set<?> keys) {
+            ((ContextAccessor<Object, ?>) accessor).readValues(context, keys, this);
+        }
+
+        @Override
+        @Nullable
+        public Object put(Object key, @Nullable Object value) {
+            if (value == null) {
+                return get(key);
             }
-            else {
-                accessor.reset();
+            int slot = this.accessorTable.slotOf(key);
+            return (slot >= 0 ? putSlotValue(slot, value) : putKeyValue(key, value));
+        }
+
+        @Nullable
+        Object putSlotValue(int slot, Object value) {
+            if (this.slotValues.length == 0) {
+                this.slotValues = new Object[this.accessorTable.size()];
             }
+            Object previousValue = this.slotValues[slot];
+            this.slotValues[slot] = value;
+            this.size += (previousValue == null ? 1 : 0);
+            return previousValue;
+        }
+
+        @Nullable
+        Object putKeyValue(Object key, Object value) {
+            int index = indexOf(this.keyValues, this.keyValueCount, key);
+            if (index >= 0) {
+                Object previousValue = this.keyValues[(index << 1) + 1];
+                this.keyValues[(index << 1) + 1] = value;
+                return previousValue;
+            }
+            if (this.keyValueCount << 1 == this.keyValues.length) {
+                this.keyValues = Arrays.copyOf(this.keyValues, Math.max(8, this.keyValues.length << 1));
+            }
+            this.keyValues[this.keyValueCount << 1] = key;
+            this.keyValues[(this.keyValueCount << 1) + 1] = value;
+            this.keyValueCount++;
+            this.size++;
+            return null;
+        }
+
+        ContextSnapshot build() {
+            return snapshotCaptured(this.contextRegistry, buildWithoutReporting());
+        }
+
+        /**
+         * Variant of {@link #build()} that does not report a capture to the
+         * {@link ContextPropagationListener}, for a snapshot whose capture
+         * was reported already, see {@link LazyContextSnapshot}.
+         */
+        ContextSnapshot buildWithoutReporting() {
+            return (this.size > 0 ?
+                    new DefaultContextSnapshot(this.contextRegistry, this.accessorTable, this.slotValues,
+                            this.keyValues, this.keyValueCount, this.size) :
+                    this.contextRegistry.getEmptyContextSnapshot());
         }
     }
 
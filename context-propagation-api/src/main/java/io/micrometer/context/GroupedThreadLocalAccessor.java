@@ -0,0 +1,64 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context;
+
+import java.util.List;
+
+/**
+ * Contract to assist with access to several related values kept together in
+ * {@link ThreadLocal} storage, e.g. MDC entries or baggage fields, including
+ * the ability to get, set, and reset all of them in one call.
+ *
+ * <p>Each key of the group is treated like the key of a
+ * {@link ThreadLocalAccessor}, i.e. it is the key under which the value is
+ * saved in a {@link ContextSnapshot}, and a later registration of any
+ * accessor with the same key replaces the group for that key.
+ *
+ * <p>Values are exchanged in arrays with one element per key, in the order
+ * of {@link #keys()}.
+ *
+ * @since 1.0.0
+ * @see ContextRegistry#registerThreadLocalAccessor(GroupedThreadLocalAccessor)
+ */
+public interface GroupedThreadLocalAccessor {
+
+    /**
+     * The distinct keys of the values in the group. The list must not change,
+     * as its order defines the position of values in the arrays passed to the
+     * other methods.
+     */
+    List<Object> keys();
+
+    /**
+     * Read the current values into the given array.
+     * @param values an array with one element per key, where to put the value
+     * for each key, or {@code null} if not set
+     */
+    void getValues(Object[] values);
+
+    /**
+     * Set the values from the given array.
+     * @param values an array with one element per key, with the value for each
+     * key, or {@code null} to remove the value
+     */
+    void setValues(Object[] values);
+
+    /**
+     * Remove all values of the group.
+     */
+    void reset();
+
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+
+/**
+ * Wrap and delegate to a {@link CompletionStage} in order to instrument the
+ * functions passed to it, and the stages that depend on it, with the same
+ * {@link ContextSnapshot}.
+ *
+ * @param <T> the type of value of the {@code CompletionStage}
+ * @since 1.0.0
+ */
+final class InstrumentedCompletionStage<T> implements CompletionStage<T> {
+
+    private final CompletionStage<T> stage;
+
+    private final ContextSnapshot contextSnapshot;
+
+
+    /**
+     * Create an instance
+     * @param stage the {@code CompletionStage} to delegate to
+     * @param contextSnapshot the {@code ContextSnapshot} with values to propagate
+     */
+    InstrumentedCompletionStage(CompletionStage<T> stage, ContextSnapshot contextSnapshot) {
+        this.stage = stage;
+        this.contextSnapshot = contextSnapshot;
+    }
+
+
+    @Override
+    public <U> CompletionStage<U> thenApply(Function<? super T, ? extends U> fn) {
+        return instrument(this.stage.thenApply(this.contextSnapshot.instrumentFunction(fn)));
+    }
+
+    @Override
+    public <U> CompletionStage<U> thenApplyAsync(Function<? super T, ? extends U> fn) {
+        return instrument(this.stage.thenApplyAsync(this.contextSnapshot.instrumentFunction(fn)));
+    }
+
+    @Override
+    public <U> CompletionStage<U> thenApplyAsync(Function<? super T, ? extends U> fn, Executor executor) {
+        return instrument(this.stage.thenApplyAsync(this.contextSnapshot.instrumentFunction(fn), executor));
+    }
+
+    @Override
+    public CompletionStage<Void> thenAccept(Consumer<? super T> action) {
+        return instrument(this.stage.thenAccept(this.contextSnapshot.instrumentConsumer(action)));
+    }
+
+    @Override
+    public CompletionStage<Void> thenAcceptAsync(Consumer<? super T> action) {
+        return instrument(this.stage.thenAcceptAsync(this.contextSnapshot.instrumentConsumer(action)));
+    }
+
+    @Override
+    public CompletionStage<Void> thenAcceptAsync(Consumer<? super T> action, Executor executor) {
+        return instrument(this.stage.thenAcceptAsync(this.contextSnapshot.instrumentConsumer(action), executor));
+    }
+
+    @Override
+    public CompletionStage<Void> thenRun(Runnable action) {
+        return instrument(this.stage.thenRun(this.contextSnapshot.instrumentRunnable(action)));
+    }
+
+    @Override
+    public CompletionStage<Void> thenRunAsync(Runnable action) {
+        return instrument(this.stage.thenRunAsync(this.contextSnapshot.instrumentRunnable(action)));
+    }
+
+    @Override
+    public CompletionStage<Void> thenRunAsync(Runnable action, Executor executor) {
+        return instrument(this.stage.thenRunAsync(this.contextSnapshot.instrumentRunnable(action), executor));
+    }
+
+    @Override
+    public <U, V> CompletionStage<V> thenCombine(
+            CompletionStage<? extends U> other, BiFunction<? super T, ? super U, ? extends V> fn) {
+        return instrument(this.stage.thenCombine(other, this.contextSnapshot.instrumentBiFunction(fn)));
+    }
+
+    @Override
+    public <U, V> CompletionStage<V> thenCombineAsync(
+            CompletionStage<? extends U> other, BiFunction<? super T, ? super U, ? extends V> fn) {
+        return instrument(this.stage.thenCombineAsync(other, this.contextSnapshot.instrumentBiFunction(fn)));
+    }
+
+    @Override
+    public <U, V> CompletionStage<V> thenCombineAsync(
+            CompletionStage<? extends U> other, BiFunction<? super T, ? super U, ? extends V> fn, Executor executor) {
+        return instrument(this.stage.thenCombineAsync(other, this.contextSnapshot.instrumentBiFunction(fn), executor));
+    }
+
+    @Override
+    public <U> CompletionStage<Void> thenAcceptBoth(
+            CompletionStage<? extends U> other, BiConsumer<? super T, ? super U> action) {
+        return instrument(this.stage.thenAcceptBoth(other, this.contextSnapshot.instrumentBiConsumer(action)));
+    }
+
+    @Override
+    public <U> CompletionStage<Void> thenAcceptBothAsync(
+            CompletionStage<? extends U> other, BiConsumer<? super T, ? super U> action) {
+        return instrument(this.stage.thenAcceptBothAsync(other, this.contextSnapshot.instrumentBiConsumer(action)));
+    }
+
+    @Override
+    public <U> CompletionStage<Void> thenAcceptBothAsync(
+            CompletionStage<? extends U> other, BiConsumer<? super T, ? super U> action, Executor executor) {
+        return instrument(this.stage.thenAcceptBothAsync(
+                other, this.contextSnapshot.instrumentBiConsumer(action), executor));
+    }
+
+    @Override
+    public CompletionStage<Void> runAfterBoth(CompletionStage<?> other, Runnable action) {
+        return instrument(this.stage.runAfterBoth(other, this.contextSnapshot.instrumentRunnable(action)));
+    }
+
+    @Override
+    public CompletionStage<Void> runAfterBothAsync(CompletionStage<?> other, Runnable action) {
+        return instrument(this.stage.runAfterBothAsync(other, this.contextSnapshot.instrumentRunnable(action)));
+    }
+
+    @Override
+    public CompletionStage<Void> runAfterBothAsync(CompletionStage<?> other, Runnable action, Executor executor) {
+        return instrument(this.stage.runAfterBothAsync(
+                other, this.contextSnapshot.instrumentRunnable(action), executor));
+    }
+
+    @Override
+    public <U> CompletionStage<U> applyToEither(CompletionStage<? extends T> other, Function<? super T, U> fn) {
+        return instrument(this.stage.applyToEither(other, this.contextSnapshot.instrumentFunction(fn)));
+    }
+
+    @Override
+    public <U> CompletionStage<U> applyToEitherAsync(CompletionStage<? extends T> other, Function<? super T, U> fn) {
+        return instrument(this.stage.applyToEitherAsync(other, this.contextSnapshot.instrumentFunction(fn)));
+    }
+
+    @Override
+    public <U> CompletionStage<U> applyToEitherAsync(
+            CompletionStage<? extends T> other, Function<? super T, U> fn, Executor executor) {
+        return instrument(this.stage.applyToEitherAsync(other, this.contextSnapshot.instrumentFunction(fn), executor));
+    }
+
+    @Override
+    public CompletionStage<Void> acceptEither(CompletionStage<? extends T> other, Consumer<? super T> action) {
+        return instrument(this.stage.acceptEither(other, this.contextSnapshot.instrumentConsumer(action)));
+    }
+
+    @Override
+    public CompletionStage<Void> acceptEitherAsync(CompletionStage<? extends T> other, Consumer<? super T> action) {
+        return instrument(this.stage.acceptEitherAsync(other, this.contextSnapshot.instrumentConsumer(action)));
+    }
+
+    @Override
+    public CompletionStage<Void> acceptEitherAsync(
+            CompletionStage<? extends T> other, Consumer<? super T> action, Executor executor) {
+        return instrument(this.stage.acceptEitherAsync(
+                other, this.contextSnapshot.instrumentConsumer(action), executor));
+    }
+
+    @Override
+    public CompletionStage<Void> runAfterEither(CompletionStage<?> other, Runnable action) {
+        return instrument(this.stage.runAfterEither(other, this.contextSnapshot.instrumentRunnable(action)));
+    }
+
+    @Override
+    public CompletionStage<Void> runAfterEitherAsync(CompletionStage<?> other, Runnable action) {
+        return instrument(this.stage.runAfterEitherAsync(other, this.contextSnapshot.instrumentRunnable(action)));
+    }
+
+    @Override
+    public CompletionStage<Void> runAfterEitherAsync(CompletionStage<?> other, Runnable action, Executor executor) {
+        return instrument(this.stage.runAfterEitherAsync(
+                other, this.contextSnapshot.instrumentRunnable(action), executor));
+    }
+
+    @Override
+    public <U> CompletionStage<U> thenCompose(Function<? super T, ? extends CompletionStage<U>> fn) {
+        return instrument(this.stage.thenCompose(this.contextSnapshot.instrumentFunction(fn)));
+    }
+
+    @Override
+    public <U> CompletionStage<U> thenComposeAsync(Function<? super T, ? extends CompletionStage<U>> fn) {
+        return instrument(this.stage.thenComposeAsync(this.contextSnapshot.instrumentFunction(fn)));
+    }
+
+    @Override
+    public <U> CompletionStage<U> thenComposeAsync(
+            Function<? super T, ? extends CompletionStage<U>> fn, Executor executor) {
+        return instrument(this.stage.thenComposeAsync(this.contextSnapshot.instrumentFunction(fn), executor));
+    }
+
+    @Override
+    public CompletionStage<T> exceptionally(Function<Throwable, ? extends T> fn) {
+        return instrument(this.stage.exceptionally(this.contextSnapshot.instrumentFunction(fn)));
+    }
+
+    @Override
+    public CompletionStage<T> whenComplete(BiConsumer<? super T, ? super Throwable> action) {
+        return instrument(this.stage.whenComplete(this.contextSnapshot.instrumentBiConsumer(action)));
+    }
+
+    @Override
+    public CompletionStage<T> whenCompleteAsync(BiConsumer<? super T, ? super Throwable> action) {
+        return instrument(this.stage.whenCompleteAsync(this.contextSnapshot.instrumentBiConsumer(action)));
+    }
+
+    @Override
+    public CompletionStage<T> whenCompleteAsync(BiConsumer<? super T, ? super Throwable> action, Executor executor) {
+        return instrument(this.stage.whenCompleteAsync(this.contextSnapshot.instrumentBiConsumer(action), executor));
+    }
+
+    @Override
+    public <U> CompletionStage<U> handle(BiFunction<? super T, Throwable, ? extends U> fn) {
+        return instrument(this.stage.handle(this.contextSnapshot.instrumentBiFunction(fn)));
+    }
+
+    @Override
+    public <U> CompletionStage<U> handleAsync(BiFunction<? super T, Throwable, ? extends U> fn) {
+        return instrument(this.stage.handleAsync(this.contextSnapshot.instrumentBiFunction(fn)));
+    }
+
+    @Override
+    public <U> CompletionStage<U> handleAsync(BiFunction<? super T, Throwable, ? extends U> fn, Executor executor) {
+        return instrument(this.stage.handleAsync(this.contextSnapshot.instrumentBiFunction(fn), executor));
+    }
+
+    @Override
+    public CompletableFuture<T> toCompletableFuture() {
+        return this.stage.toCompletableFuture();
+    }
+
+    private <U> CompletionStage<U> instrument(CompletionStage<U> stage) {
+        return new InstrumentedCompletionStage<>(stage, this.contextSnapshot);
+    }
+
+    @Override
+    public String toString() {
+        return "InstrumentedCompletionStage[" + this.stage + "]";
+    }
+
+}
@@ -15,6 +15,7 @@
  */
 package io.micrometer.context;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -23,20 +24,28 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
 
 
 /**
  * Wrap and delegate to an {@link ExecutorService} in order to instrument all
  * tasks executed through it.
  *
+ * <p>The snapshot to instrument with is either fixed, or is obtained for each
+ * submission on the submitting thread, see
+ * {@link ContextCapturer#instrumentExecutorService(ExecutorService)}.
+ *
+ * <p>If the registry of the snapshot has a {@link ScopeLeakDetector} that
+ * {@link ScopeLeakDetector#isCheckExecutorTasks() checks executor tasks}, each
+ * task is also checked for {@code ThreadLocal} values it did not restore.
+ *
  * @author Marcin Grzejszczak
  * @author Rossen Stoyanchev
  * @since 1.0.0
  */
-final class InstrumentedExecutorService implements ExecutorService {
+class InstrumentedExecutorService implements ExecutorService {
 
-    private final ContextSnapshot contextSnapshot;
+    private final Supplier<ContextSnapshot> snapshotSupplier;
 
     private final ExecutorService executorService;
 
@@ -47,11 +56,74 @@ final class InstrumentedExecutorService implements ExecutorService {
      * @param contextSnapshot the {@code ContextSnapshot} with values to propagate
      */
     InstrumentedExecutorService(ExecutorService executorService, ContextSnapshot contextSnapshot) {
-        this.contextSnapshot = contextSnapshot;
+        this(executorService, () -> contextSnapshot);
+    }
+
+    /**
+     * Create an instance
+     * @param executorService the {@code ExecutorService} to delegate to
+     * @param snapshotSupplier supplier of the {@code ContextSnapshot} to
+     * propagate, called on the submitting thread for each submission
+     */
+    InstrumentedExecutorService(ExecutorService executorService, Supplier<ContextSnapshot> snapshotSupplier) {
+        this.snapshotSupplier = snapshotSupplier;
         this.executorService = executorService;
     }
 
 
+    /**
+     * Return the snapshot to instrument a submission with.
+     */
+    ContextSnapshot getContextSnapshot() {
+        return this.snapshotSupplier.get();
+    }
+
+    /**
+     * Return the given task, instrumented with the snapshot, and checked by
+     * the {@link ScopeLeakDetector} of its registry, if configured to.
+     */
+    Runnable instrumentRunnable(ContextSnapshot snapshot, Runnable task) {
+        return checkTask(snapshot, snapshot.instrumentRunnable(task));
+    }
+
+    /**
+     * Variant of {@link #instrumentRunnable(ContextSnapshot, Runnable)} for a
+     * {@code Callable}.
+     */
+    <T> Callable<T> instrumentCallable(ContextSnapshot snapshot, Callable<T> task) {
+        return checkTask(snapshot, snapshot.instrumentCallable(task));
+    }
+
+    /**
+     * Return the given task, already instrumented with the snapshot, and
+     * checked by the {@link ScopeLeakDetector} of its registry, if configured to.
+     */
+    Runnable checkTask(ContextSnapshot snapshot, Runnable instrumentedTask) {
+        ContextRegistry registry = DefaultContextSnapshot.getContextRegistry(snapshot);
+        ScopeLeakDetector leakDetector = getTaskLeakDetector(registry);
+        return (leakDetector != null ? leakDetector.checkTask(registry, instrumentedTask) : instrumentedTask);
+    }
+
+    /**
+     * Variant of {@link #checkTask(ContextSnapshot, Runnable)} for a
+     * {@code Callable}.
+     */
+    <T> Callable<T> checkTask(ContextSnapshot snapshot, Callable<T> instrumentedTask) {
+        ContextRegistry registry = DefaultContextSnapshot.getContextRegistry(snapshot);
+        ScopeLeakDetector leakDetector = getTaskLeakDetector(registry);
+        return (leakDetector != null ? leakDetector.checkTask(registry, instrumentedTask) : instrumentedTask);
+    }
+
+    /**
+     * Return the detector of the given registry, if it checks executor tasks.
+     */
+    @Nullable
+    private static ScopeLeakDetector getTaskLeakDetector(@Nullable ContextRegistry registry) {
+        ScopeLeakDetector leakDetector = (registry != null ? registry.getScopeLeakDetector() : null);
+        return (leakDetector != null && leakDetector.isCheckExecutorTasks() ? leakDetector : null);
+    }
+
+
     @Override
     public void shutdown() {
         this.executorService.shutdown();
@@ -79,26 +151,24 @@ final class InstrumentedExecutorService implements ExecutorService {
 
     @Override
     public <T> Future<T> submit(Callable<T> task) {
-        return this.executorService.submit(this.contextSnapshot.instrumentCallable(task));
+        return this.executorService.submit(instrumentCallable(getContextSnapshot(), task));
     }
 
     @Override
     public <T> Future<T> submit(Runnable task, T result) {
-        return this.executorService.submit(this.contextSnapshot.instrumentRunnable(task), result);
+        return this.executorService.submit(instrumentRunnable(getContextSnapshot(), task), result);
     }
 
     @Override
     public Future<?> submit(Runnable task) {
-        return this.executorService.submit(this.contextSnapshot.instrumentRunnable(task));
+        return this.executorService.submit(instrumentRunnable(getContextSnapshot(), task));
     }
 
     @Override
     public <T> List<Future<T>> invokeAll(Collection<? extends Callable<T>> tasks) 
             throws InterruptedException {
 
-        List<Callable<T>> instrumentedTasks = tasks.stream()
-                .map(this.contextSnapshot::instrumentCallable)
-                .collect(Collectors.toList());
+        List<Callable<T>> instrumentedTasks = instrumentCallables(tasks);
 
         return this.executorService.invokeAll(instrumentedTasks);
     }
@@ -108,9 +178,7 @@ final class InstrumentedExecutorService implements ExecutorService {
             Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit) 
             throws InterruptedException {
 
-        List<Callable<T>> instrumentedTasks = tasks.stream()
-                .map(this.contextSnapshot::instrumentCallable)
-                .collect(Collectors.toList());
+        List<Callable<T>> instrumentedTasks = instrumentCallables(tasks);
 
         return this.executorService.invokeAll(instrumentedTasks, timeout, unit);
     }
@@ -119,9 +187,7 @@ final class InstrumentedExecutorService implements ExecutorService {
     public <T> T invokeAny(Collection<? extends Callable<T>> tasks) 
             throws InterruptedException, ExecutionException {
 
-        List<Callable<T>> instrumentedTasks = tasks.stream()
-                .map(this.contextSnapshot::instrumentCallable)
-                .collect(Collectors.toList());
+        List<Callable<T>> instrumentedTasks = instrumentCallables(tasks);
 
         return this.executorService.invokeAny(instrumentedTasks);
     }
@@ -131,16 +197,23 @@ final class InstrumentedExecutorService implements ExecutorService {
             Collection<? extends Callable<T>> tasks, long timeout, TimeUnit unit)
             throws InterruptedException, ExecutionException, TimeoutException {
 
-        List<Callable<T>> instrumentedTasks = tasks.stream()
-                .map(this.contextSnapshot::instrumentCallable)
-                .collect(Collectors.toList());
+        List<Callable<T>> instrumentedTasks = instrumentCallables(tasks);
 
         return this.executorService.invokeAny(instrumentedTasks, timeout, unit);
     }
 
     @Override
     public void execute(Runnable command) {
-        this.executorService.execute(this.contextSnapshot.instrumentRunnable(command));
+        this.executorService.execute(instrumentRunnable(getContextSnapshot(), command));
+    }
+
+    private <T> List<Callable<T>> instrumentCallables(Collection<? extends Callable<T>> tasks) {
+        ContextSnapshot snapshot = getContextSnapshot();
+        List<Callable<T>> instrumentedTasks = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            instrumentedTasks.add(instrumentCallable(snapshot, task));
+        }
+        return instrumentedTasks;
     }
 
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Wrap and delegate to a {@link ScheduledExecutorService} in order to
+ * instrument all tasks executed or scheduled through it.
+ *
+ * <p>A periodic task is wrapped once when it is scheduled, and the wrapper
+ * reuses the same {@link ContextSnapshot.Scope} for all of its runs, which do
+ * not overlap, so that runs do not allocate.
+ *
+ * @since 1.0.0
+ */
+final class InstrumentedScheduledExecutorService extends InstrumentedExecutorService
+        implements ScheduledExecutorService {
+
+    private final ScheduledExecutorService executorService;
+
+
+    /**
+     * Create an instance
+     * @param executorService the {@code ScheduledExecutorService} to delegate to
+     * @param contextSnapshot the {@code ContextSnapshot} with values to propagate
+     */
+    InstrumentedScheduledExecutorService(ScheduledExecutorService executorService, ContextSnapshot contextSnapshot) {
+        super(executorService, contextSnapshot);
+        this.executorService = executorService;
+    }
+
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return this.executorService.schedule(instrumentRunnable(getContextSnapshot(), command), delay, unit);
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        return this.executorService.schedule(instrumentCallable(getContextSnapshot(), callable), delay, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        ContextSnapshot snapshot = getContextSnapshot();
+        Runnable instrumentedCommand = checkTask(snapshot,
+                DefaultContextSnapshot.instrumentPeriodicRunnable(snapshot, command));
+        return this.executorService.scheduleAtFixedRate(instrumentedCommand, initialDelay, period, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        ContextSnapshot snapshot = getContextSnapshot();
+        Runnable instrumentedCommand = checkTask(snapshot,
+                DefaultContextSnapshot.instrumentPeriodicRunnable(snapshot, command));
+        return this.executorService.scheduleWithFixedDelay(instrumentedCommand, initialDelay, delay, unit);
+    }
+
+}
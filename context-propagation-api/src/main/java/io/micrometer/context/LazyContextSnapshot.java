@@ -0,0 +1,155 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context;
+
+import java.util.function.Predicate;
+
+/**
+ * {@link ContextSnapshot} that captures {@link ThreadLocal} values eagerly, as
+ * it must, but holds on to other, immutable contexts, and reads values from
+ * them only when the snapshot is first used.
+ *
+ * <p>Values are read at most once in the common case. If the snapshot is first
+ * used concurrently from several threads, each may read values, but they all
+ * end up with equivalent results.
+ *
+ * <p>The capture is reported to the {@link ContextPropagationListener}, and as
+ * a Flight Recorder event, when the snapshot is created, with the number of
+ * ThreadLocal values, and not again when values are read from contexts.
+ *
+ * @since 1.0.0
+ */
+final class LazyContextSnapshot implements ContextSnapshot {
+
+    private final ContextRegistry contextRegistry;
+
+    private final ThreadLocalAccessorTable accessorTable;
+
+    @Nullable
+    private final Object[] slotValues;
+
+    private final Object[] contexts;
+
+    private final Predicate<Object> keyPredicate;
+
+    @Nullable
+    private volatile ContextSnapshot delegate;
+
+
+    private LazyContextSnapshot(
+            ContextRegistry contextRegistry, ThreadLocalAccessorTable accessorTable, @Nullable Object[] slotValues,
+            Object[] contexts, Predicate<Object> keyPredicate) {
+
+        this.contextRegistry = contextRegistry;
+        this.accessorTable = accessorTable;
+        this.slotValues = slotValues;
+        this.contexts = contexts;
+        this.keyPredicate = keyPredicate;
+    }
+
+
+    @Override
+    public <C> C updateContext(C context) {
+        return getDelegate().updateContext(context);
+    }
+
+    @Override
+    public <C> C updateContext(C context, Predicate<Object> keyPredicate) {
+        return getDelegate().updateContext(context, keyPredicate);
+    }
+
+    @Override
+    public Scope setThreadLocalValues() {
+        return getDelegate().setThreadLocalValues();
+    }
+
+    @Override
+    public Scope setThreadLocalValues(Predicate<Object> keyPredicate) {
+        return getDelegate().setThreadLocalValues(keyPredicate);
+    }
+
+    ContextRegistry getContextRegistry() {
+        return this.contextRegistry;
+    }
+
+    ContextSnapshot getDelegate() {
+        ContextSnapshot delegate = this.delegate;
+        if (delegate == null) {
+            // the Builder adds to slot values, so it must not share them
+            Object[] values = (this.slotValues != null ? this.slotValues.clone() : null);
+            DefaultContextSnapshot.Builder builder =
+                    new DefaultContextSnapshot.Builder(this.contextRegistry, this.accessorTable, values);
+            for (Object context : this.contexts) {
+                builder.readValues(this.contextRegistry.getContextAccessorForRead(context), context, this.keyPredicate);
+            }
+            delegate = builder.buildWithoutReporting();
+            this.delegate = delegate;
+        }
+        return delegate;
+    }
+
+    @Override
+    public String toString() {
+        return getDelegate().toString();
+    }
+
+
+    /**
+     * Capture {@link ThreadLocal} values, and defer reading values from the
+     * given contexts until the snapshot is used.
+     * @param contextRegistry the registry with the accessors to use
+     * @param keyPredicate predicate for context value keys
+     * @param contexts immutable context objects to extract values from
+     * @return a snapshot with saved ThreadLocal values
+     */
+    static ContextSnapshot capture(
+            ContextRegistry contextRegistry, Predicate<Object> keyPredicate, Object... contexts) {
+
+        if (contexts.length == 0) {
+            return DefaultContextSnapshot.capture(contextRegistry, keyPredicate);
+        }
+        for (Object context : contexts) {
+            // fail now rather than later, if a context cannot be read
+            contextRegistry.getContextAccessorForRead(context);
+        }
+        Object event = ContextEvents.beginCapture();
+        ThreadLocalAccessorTable table = contextRegistry.getThreadLocalAccessorTable();
+        Object[] slotValues = DefaultContextSnapshot.readThreadLocalValues(table, keyPredicate);
+        // copy the array, so that the caller cannot change it before it is read
+        ContextSnapshot snapshot =
+                new LazyContextSnapshot(contextRegistry, table, slotValues, contexts.clone(), keyPredicate);
+        int size = countValues(slotValues);
+        ContextPropagationListener listener = contextRegistry.getPropagationListener();
+        if (listener != null) {
+            listener.snapshotCaptured(size);
+        }
+        if (event != null) {
+            ContextEvents.endCapture(event, contextRegistry, size, table.size());
+        }
+        return snapshot;
+    }
+
+    private static int countValues(@Nullable Object[] slotValues) {
+        int count = 0;
+        if (slotValues != null) {
+            for (Object value : slotValues) {
+                count += (value != null ? 1 : 0);
+            }
+        }
+        return count;
+    }
+
+}
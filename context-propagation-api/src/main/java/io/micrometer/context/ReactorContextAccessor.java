@@ -16,7 +16,10 @@
 package io.micrometer.context;
 
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 import reactor.util.context.Context;
 import reactor.util.context.ContextView;
@@ -30,6 +33,13 @@ import reactor.util.context.ContextView;
  */
 public class ReactorContextAccessor implements ContextAccessor<ContextView, Context> {
 
+    /**
+     * The largest size for which Reactor has a dedicated {@code Context}
+     * implementation, up to which a {@code put} copies no more than 5 entries.
+     */
+    private static final int MAX_CHAINED_PUT_SIZE = 5;
+
+
     @Override
     public boolean canReadFrom(Class<?> contextType) {
         return ContextView.class.isAssignableFrom(contextType);
@@ -37,9 +47,39 @@ public class ReactorContextAccessor implements ContextAccessor<ContextView, Cont
 
     @Override
     public void readValues(ContextView source, Predicate<Object> keyPredicate, Map<Object, Object> target) {
-        source.stream()
-                .filter(entry -> keyPredicate.test(entry.getKey()))
-                .forEach(entry -> target.put(entry.getKey(), entry.getValue()));
+        if (source.isEmpty()) {
+            return;
+        }
+        if (source instanceof Map) {
+            // Reactor's Context for more than 5 entries, ContextN, extends
+            // LinkedHashMap, as verified by ReactorContextAccessorTests; this
+            // avoids a Stream, as ContextView has no forEach until Reactor 3.5
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) source).entrySet()) {
+                if (keyPredicate.test(entry.getKey())) {
+                    target.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return;
+        }
+        source.stream().forEach(entry -> {
+            if (keyPredicate.test(entry.getKey())) {
+                target.put(entry.getKey(), entry.getValue());
+            }
+        });
+    }
+
+    @Override
+    public void readValues(ContextView source, Set<?> keys, Map<Object, Object> target) {
+        if (keys.size() >= source.size()) {
+            readValues(source, keys::contains, target);
+            return;
+        }
+        for (Object key : keys) {
+            Object value = source.getOrDefault(key, null);
+            if (value != null) {
+                target.put(key, value);
+            }
+        }
     }
 
     @Override
@@ -49,7 +89,61 @@ public class ReactorContextAccessor implements ContextAccessor<ContextView, Cont
 
     @Override
     public Context writeValues(Map<Object, Object> source, Context target) {
-        return target.putAll(Context.of(source).readOnly());
+        if (source.isEmpty()) {
+            return target;
+        }
+        if (target.isEmpty()) {
+            return Context.of(source);
+        }
+        if (target.size() + source.size() <= MAX_CHAINED_PUT_SIZE) {
+            for (Map.Entry<Object, Object> entry : source.entrySet()) {
+                target = target.put(entry.getKey(), entry.getValue());
+            }
+            return target;
+        }
+        // Reactor copies both into one Context, without an intermediate copy
+        // of the source, as putAllMap is available only as of Reactor 3.5
+        return target.putAll(new MapContextView(source));
+    }
+
+
+    /**
+     * Read-only {@link ContextView} over the values to write, for
+     * {@link Context#putAll(ContextView)}.
+     */
+    private static final class MapContextView implements ContextView {
+
+        private final Map<Object, Object> values;
+
+        MapContextView(Map<Object, Object> values) {
+            this.values = values;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T get(Object key) {
+            Object value = this.values.get(key);
+            if (value == null) {
+                throw new NoSuchElementException("Context does not contain key: " + key);
+            }
+            return (T) value;
+        }
+
+        @Override
+        public boolean hasKey(Object key) {
+            return this.values.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return this.values.size();
+        }
+
+        @Override
+        public Stream<Map.Entry<Object, Object>> stream() {
+            return this.values.entrySet().stream();
+        }
+
     }
 
 }
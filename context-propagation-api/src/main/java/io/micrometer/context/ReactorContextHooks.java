@@ -0,0 +1,204 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context;
+
+import java.util.function.Function;
+
+import org.reactivestreams.Subscription;
+import reactor.core.CoreSubscriber;
+import reactor.core.publisher.Hooks;
+import reactor.core.publisher.Operators;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
+
+/**
+ * Reactor {@link Hooks hook} to set {@link ThreadLocal} values from the
+ * subscriber {@link Context} around each signal of each operator, so that
+ * code in operators such as {@code map} or {@code doOnNext} sees the same
+ * ThreadLocal values it would in imperative code, e.g. for logging or tracing.
+ * For the opposite direction, {@link #captureThreadLocalValues()} provides a
+ * function for {@code contextWrite} that writes ThreadLocal values to the
+ * {@code Context}, and {@link #enableScheduleHook()} propagates ThreadLocal
+ * values to tasks run by Reactor {@link Schedulers}.
+ *
+ * <p>Values are read from the {@code Context} once per subscriber, for keys
+ * of registered {@link ThreadLocalAccessor}'s only, and subscribers with no
+ * such values are not decorated. For each signal, values already on the
+ * thread, typically set by the previous operator in the same chain, are left
+ * as they are.
+ *
+ * @since 1.0.0
+ */
+public final class ReactorContextHooks {
+
+    private static final String HOOK_KEY = ReactorContextHooks.class.getName();
+
+    private static final String SCHEDULE_HOOK_KEY = ReactorContextHooks.class.getName() + ".SCHEDULE";
+
+
+    private ReactorContextHooks() {
+    }
+
+
+    /**
+     * Register the hook with the {@link ContextRegistry#getInstance() global}
+     * ContextRegistry instance.
+     */
+    public static void enable() {
+        enable(ContextRegistry.getInstance());
+    }
+
+    /**
+     * Register the hook with the given {@link ContextRegistry}, replacing a
+     * previous registration, if any.
+     * <p>Subscribers are not decorated while the registry has no
+     * {@link ContextAccessor} for the Reactor {@code Context}, such as
+     * {@link ReactorContextAccessor}.
+     * @param registry the registry with the accessors to use
+     */
+    public static void enable(ContextRegistry registry) {
+        Hooks.onEachOperator(HOOK_KEY, Operators.lift((scannable, subscriber) -> decorate(subscriber, registry)));
+    }
+
+    /**
+     * Remove the hook. This does not affect subscribers that are already
+     * decorated.
+     */
+    public static void disable() {
+        Hooks.resetOnEachOperator(HOOK_KEY);
+    }
+
+    /**
+     * Register a {@link Schedulers#onScheduleHook schedule hook} that captures
+     * ThreadLocal values with the {@link ContextRegistry#getInstance() global}
+     * ContextRegistry instance on the thread that schedules a task, e.g. for
+     * {@code publishOn} or {@code subscribeOn}, and sets them on the worker
+     * thread around the task.
+     */
+    public static void enableScheduleHook() {
+        enableScheduleHook(ContextRegistry.getInstance());
+    }
+
+    /**
+     * Variant of {@link #enableScheduleHook()} with a specific
+     * {@link ContextRegistry} instead of the global instance.
+     * <p>Tasks scheduled when no ThreadLocal values are set are not decorated.
+     * @param registry the registry with the accessors to use
+     */
+    public static void enableScheduleHook(ContextRegistry registry) {
+        Schedulers.onScheduleHook(SCHEDULE_HOOK_KEY, runnable -> {
+            ContextSnapshot snapshot = DefaultContextSnapshot.captureThreadLocalValues(registry);
+            return (snapshot != null ? snapshot.instrumentRunnable(runnable) : runnable);
+        });
+    }
+
+    /**
+     * Remove the schedule hook. This does not affect tasks that are already
+     * scheduled.
+     */
+    public static void disableScheduleHook() {
+        Schedulers.resetOnScheduleHook(SCHEDULE_HOOK_KEY);
+    }
+
+    /**
+     * Return a function for {@code contextWrite} that captures ThreadLocal
+     * values with the {@link ContextRegistry#getInstance() global}
+     * ContextRegistry instance, and writes them to the {@code Context}.
+     * <pre class="code">
+     * Flux.just("a").map(...).contextWrite(ReactorContextHooks.captureThreadLocalValues());
+     * </pre>
+     */
+    public static Function<Context, Context> captureThreadLocalValues() {
+        return captureThreadLocalValues(ContextRegistry.getInstance());
+    }
+
+    /**
+     * Variant of {@link #captureThreadLocalValues()} with a specific
+     * {@link ContextRegistry} instead of the global instance.
+     * <p>The function is applied once per subscription, on the subscribing
+     * thread, and returns the given {@code Context} as is if no ThreadLocal
+     * values are set.
+     * @param registry the registry with the accessors to use
+     */
+    public static Function<Context, Context> captureThreadLocalValues(ContextRegistry registry) {
+        return context -> {
+            ContextSnapshot snapshot = DefaultContextSnapshot.captureThreadLocalValues(registry);
+            return (snapshot != null ? snapshot.updateContext(context) : context);
+        };
+    }
+
+    private static <T> CoreSubscriber<? super T> decorate(
+            CoreSubscriber<? super T> subscriber, ContextRegistry registry) {
+
+        Context context = subscriber.currentContext();
+        if (context.isEmpty()) {
+            return subscriber;
+        }
+        ContextSnapshot snapshot = DefaultContextSnapshot.captureContext(registry, context);
+        return (snapshot != null ? new ThreadLocalSettingSubscriber<>(subscriber, snapshot) : subscriber);
+    }
+
+
+    /**
+     * Subscriber that sets ThreadLocal values from a snapshot taken on
+     * subscription, around each signal to the actual subscriber.
+     */
+    private static final class ThreadLocalSettingSubscriber<T> implements CoreSubscriber<T> {
+
+        private final CoreSubscriber<? super T> actual;
+
+        private final ContextSnapshot snapshot;
+
+        ThreadLocalSettingSubscriber(CoreSubscriber<? super T> actual, ContextSnapshot snapshot) {
+            this.actual = actual;
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public Context currentContext() {
+            return this.actual.currentContext();
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            try (ContextSnapshot.Scope scope = this.snapshot.setThreadLocalValues()) {
+                this.actual.onSubscribe(subscription);
+            }
+        }
+
+        @Override
+        public void onNext(T value) {
+            try (ContextSnapshot.Scope scope = this.snapshot.setThreadLocalValues()) {
+                this.actual.onNext(value);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            try (ContextSnapshot.Scope scope = this.snapshot.setThreadLocalValues()) {
+                this.actual.onError(throwable);
+            }
+        }
+
+        @Override
+        public void onComplete() {
+            try (ContextSnapshot.Scope scope = this.snapshot.setThreadLocalValues()) {
+                this.actual.onComplete();
+            }
+        }
+    }
+
+}
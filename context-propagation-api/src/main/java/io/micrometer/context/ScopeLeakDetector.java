@@ -0,0 +1,372 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+/**
+ * Opt-in detector for a {@link ContextSnapshot.Scope} that is never closed, or
+ * closed on a different thread, either of which leaves values on a pooled
+ * thread for later tasks to see. Set it on a {@link ContextRegistry} through
+ * {@link ContextRegistry#setScopeLeakDetector(ScopeLeakDetector)}.
+ *
+ * <p>A fraction of scopes, given by the sample rate, is tracked along with the
+ * site where it was opened. A tracked scope that is garbage collected without
+ * having been closed is reported the next time a scope is tracked, or on a
+ * call to {@link #checkUnclosedScopes()}. At a sample rate of 0, the registry
+ * does not keep the detector, and scopes are not sampled at all.
+ *
+ * <p>When created to check executor tasks, an {@code ExecutorService}
+ * from {@link ContextSnapshot#instrumentExecutorService} or
+ * {@link ContextCapturer#instrumentExecutorService} also checks after every
+ * task that registered {@code ThreadLocal} values are the same as before it.
+ *
+ * <pre class="code">
+ * ContextRegistry.getInstance().setScopeLeakDetector(
+ *         new ScopeLeakDetector(0.01, leak -&gt; logger.warn(leak, leak.getAllocationSite())));
+ * </pre>
+ *
+ * @since 1.0.0
+ */
+public final class ScopeLeakDetector {
+
+    private static final Object[] EMPTY_VALUES = new Object[0];
+
+    private final double sampleRate;
+
+    private final Consumer<Leak> reporter;
+
+    private final boolean checkExecutorTasks;
+
+    private final Set<ScopeReference> references = ConcurrentHashMap.newKeySet();
+
+    private final ReferenceQueue<TrackedScope> referenceQueue = new ReferenceQueue<>();
+
+
+    /**
+     * Create an instance that does not check executor tasks.
+     * @param sampleRate the fraction of scopes to track, from 0 to 1
+     * @param reporter callback for detected leaks, invoked on the thread that
+     * detects them, which should not throw
+     */
+    public ScopeLeakDetector(double sampleRate, Consumer<Leak> reporter) {
+        this(sampleRate, false, reporter);
+    }
+
+    /**
+     * Create an instance.
+     * @param sampleRate the fraction of scopes to track, from 0 to 1
+     * @param checkExecutorTasks whether to check after every task of an
+     * instrumented {@code ExecutorService} that registered {@code ThreadLocal}
+     * values were returned to their state before the task. This reads all
+     * values before and after every task, and is meant for tests and
+     * troubleshooting.
+     * @param reporter callback for detected leaks, invoked on the thread that
+     * detects them, which should not throw
+     */
+    public ScopeLeakDetector(double sampleRate, boolean checkExecutorTasks, Consumer<Leak> reporter) {
+        if (sampleRate < 0 || sampleRate > 1) {
+            throw new IllegalArgumentException("Sample rate must be between 0 and 1: " + sampleRate);
+        }
+        this.sampleRate = sampleRate;
+        this.checkExecutorTasks = checkExecutorTasks;
+        this.reporter = reporter;
+    }
+
+
+    /**
+     * Return the fraction of scopes that are tracked.
+     */
+    public double getSampleRate() {
+        return this.sampleRate;
+    }
+
+    /**
+     * Whether tasks of an instrumented {@code ExecutorService} are checked.
+     */
+    public boolean isCheckExecutorTasks() {
+        return this.checkExecutorTasks;
+    }
+
+    /**
+     * Whether the detector does anything at all, or the registry need not
+     * keep it.
+     */
+    boolean isEnabled() {
+        return (this.sampleRate > 0 || this.checkExecutorTasks);
+    }
+
+    /**
+     * Report tracked scopes that were garbage collected without having been
+     * closed.
+     */
+    public void checkUnclosedScopes() {
+        ScopeReference reference;
+        while ((reference = (ScopeReference) this.referenceQueue.poll()) != null) {
+            if (this.references.remove(reference)) {
+                this.reporter.accept(new Leak(
+                        LeakType.NOT_CLOSED, reference.keys, reference.threadName, null, reference.allocationSite));
+            }
+        }
+    }
+
+    /**
+     * Whether to track the next scope, decided at the sample rate, before the
+     * keys to {@link #track} it with are collected.
+     */
+    boolean shouldSample() {
+        return (this.sampleRate >= 1 ||
+                (this.sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < this.sampleRate));
+    }
+
+    /**
+     * Return a tracked scope that delegates to the given scope, for a scope
+     * that was {@link #shouldSample() sampled}.
+     * @param scope the scope with values that were set
+     * @param keys the keys of the values that were set
+     */
+    ContextSnapshot.Scope track(ContextSnapshot.Scope scope, Set<Object> keys) {
+        checkUnclosedScopes();
+        TrackedScope trackedScope = new TrackedScope(scope);
+        ScopeReference reference = new ScopeReference(trackedScope, keys, this.referenceQueue);
+        trackedScope.reference = reference;
+        this.references.add(reference);
+        return trackedScope;
+    }
+
+    /**
+     * Return a task that runs the given task, and then reports registered
+     * {@code ThreadLocal} values that differ from those before the task.
+     */
+    Runnable checkTask(ContextRegistry contextRegistry, Runnable task) {
+        return () -> {
+            ThreadLocalAccessorTable table = contextRegistry.getThreadLocalAccessorTable();
+            Object[] previousValues = readThreadLocalValues(table);
+            try {
+                task.run();
+            }
+            finally {
+                checkThreadLocalValues(table, previousValues);
+            }
+        };
+    }
+
+    /**
+     * Variant of {@link #checkTask(ContextRegistry, Runnable)} for a
+     * {@code Callable}.
+     */
+    <T> Callable<T> checkTask(ContextRegistry contextRegistry, Callable<T> task) {
+        return () -> {
+            ThreadLocalAccessorTable table = contextRegistry.getThreadLocalAccessorTable();
+            Object[] previousValues = readThreadLocalValues(table);
+            try {
+                return task.call();
+            }
+            finally {
+                checkThreadLocalValues(table, previousValues);
+            }
+        };
+    }
+
+    private static Object[] readThreadLocalValues(ThreadLocalAccessorTable table) {
+        Object[] values = DefaultContextSnapshot.readThreadLocalValues(table, key -> true);
+        return (values != null ? values : EMPTY_VALUES);
+    }
+
+    private void checkThreadLocalValues(ThreadLocalAccessorTable table, Object[] previousValues) {
+        Object[] values = readThreadLocalValues(table);
+        Set<Object> keys = null;
+        for (int slot = 0; slot < table.size(); slot++) {
+            Object previousValue = (slot < previousValues.length ? previousValues[slot] : null);
+            Object value = (slot < values.length ? values[slot] : null);
+            if (value != previousValue) {
+                keys = (keys != null ? keys : new LinkedHashSet<>());
+                keys.add(table.key(slot));
+            }
+        }
+        if (keys != null) {
+            this.reporter.accept(new Leak(LeakType.NOT_RESTORED, keys, Thread.currentThread().getName(), null, null));
+        }
+    }
+
+
+    /**
+     * The type of a {@link Leak}.
+     */
+    public enum LeakType {
+
+        /**
+         * A scope that was garbage collected without having been closed.
+         */
+        NOT_CLOSED,
+
+        /**
+         * A scope that was closed on a thread other than the one it was
+         * opened on.
+         */
+        CLOSED_ON_DIFFERENT_THREAD,
+
+        /**
+         * A task of an instrumented {@code ExecutorService} that ended with
+         * {@code ThreadLocal} values other than those before it.
+         */
+        NOT_RESTORED
+
+    }
+
+
+    /**
+     * A detected leak, passed to the reporter of a {@link ScopeLeakDetector}.
+     */
+    public static final class Leak {
+
+        private final LeakType type;
+
+        private final Set<Object> keys;
+
+        private final String threadName;
+
+        @Nullable
+        private final String closingThreadName;
+
+        @Nullable
+        private final Throwable allocationSite;
+
+        private Leak(
+                LeakType type, Set<Object> keys, String threadName, @Nullable String closingThreadName,
+                @Nullable Throwable allocationSite) {
+
+            this.type = type;
+            this.keys = Collections.unmodifiableSet(keys);
+            this.threadName = threadName;
+            this.closingThreadName = closingThreadName;
+            this.allocationSite = allocationSite;
+        }
+
+        /**
+         * Return the type of leak.
+         */
+        public LeakType getType() {
+            return this.type;
+        }
+
+        /**
+         * Return the keys of the {@code ThreadLocal} values that were set by
+         * the scope, or that were not restored after a task.
+         */
+        public Set<Object> getKeys() {
+            return this.keys;
+        }
+
+        /**
+         * Return the name of the thread the scope was opened on, or the task
+         * ran on.
+         */
+        public String getThreadName() {
+            return this.threadName;
+        }
+
+        /**
+         * Return the name of the thread the scope was closed on, or
+         * {@code null} if it was not closed, or for a task.
+         */
+        @Nullable
+        public String getClosingThreadName() {
+            return this.closingThreadName;
+        }
+
+        /**
+         * Return an exception with the stack trace of where the scope was
+         * opened, or {@code null} for a task.
+         */
+        @Nullable
+        public Throwable getAllocationSite() {
+            return this.allocationSite;
+        }
+
+        @Override
+        public String toString() {
+            return "Leak{type=" + this.type + ", keys=" + this.keys + ", thread='" + this.threadName + "'" +
+                    (this.closingThreadName != null ? ", closingThread='" + this.closingThreadName + "'" : "") + "}";
+        }
+    }
+
+
+    /**
+     * Scope that is tracked until it is closed, or garbage collected.
+     */
+    private final class TrackedScope implements ContextSnapshot.Scope {
+
+        private final ContextSnapshot.Scope delegate;
+
+        @Nullable
+        private ScopeReference reference;
+
+        TrackedScope(ContextSnapshot.Scope delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void close() {
+            this.delegate.close();
+            ScopeReference reference = this.reference;
+            if (reference == null || !references.remove(reference)) {
+                return;
+            }
+            this.reference = null;
+            reference.clear();
+            Thread thread = Thread.currentThread();
+            if (thread != reference.thread.get()) {
+                reporter.accept(new Leak(LeakType.CLOSED_ON_DIFFERENT_THREAD,
+                        reference.keys, reference.threadName, thread.getName(), reference.allocationSite));
+            }
+        }
+    }
+
+
+    /**
+     * Reference to a {@link TrackedScope} with the state needed to report it,
+     * which must not refer to the scope itself.
+     */
+    private static final class ScopeReference extends WeakReference<TrackedScope> {
+
+        private final Set<Object> keys;
+
+        private final WeakReference<Thread> thread;
+
+        private final String threadName;
+
+        private final Throwable allocationSite;
+
+        ScopeReference(TrackedScope scope, Set<Object> keys, ReferenceQueue<TrackedScope> queue) {
+            super(scope, queue);
+            Thread currentThread = Thread.currentThread();
+            this.keys = keys;
+            this.thread = new WeakReference<>(currentThread);
+            this.threadName = currentThread.getName();
+            this.allocationSite = new Throwable("Scope opened on thread '" + this.threadName + "'");
+        }
+    }
+
+}
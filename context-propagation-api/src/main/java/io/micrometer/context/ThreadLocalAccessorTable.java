@@ -0,0 +1,329 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable table of the {@link ThreadLocalAccessor}'s registered in a
+ * {@link ContextRegistry}, each at a stable slot index.
+ *
+ * <p>A registration creates a new table with the next registry version. An accessor
+ * with the same {@link ThreadLocalAccessor#key() key} as an existing one takes
+ * over its slot, and any other accessor is appended in a new slot. As a
+ * result, a slot refers to the same key in all later versions of the table,
+ * and values held by slot remain valid after further registrations.
+ *
+ * <p>A {@link GroupedThreadLocalAccessor} takes one slot per key, the same way,
+ * and each of those slots records the group and the index of the key in it, so
+ * values can be read and written for the whole group at once. The slot also
+ * holds a {@link ThreadLocalAccessor} view of the key, for code that accesses
+ * values one at a time.
+ *
+ * @since 1.0.0
+ */
+final class ThreadLocalAccessorTable {
+
+    private static final int LINEAR_SEARCH_THRESHOLD = 8;
+
+    static final ThreadLocalAccessorTable EMPTY =
+            new ThreadLocalAccessorTable(0, new ThreadLocalAccessor<?>[0], new GroupedThreadLocalAccessor[0], new int[0]);
+
+
+    private final int version;
+
+    private final ThreadLocalAccessor<?>[] accessors;
+
+    private final Object[] keys;
+
+    private final GroupedThreadLocalAccessor[] groups;
+
+    private final int[] groupIndexes;
+
+    @Nullable
+    private final Map<Object, Integer> slotsByKey;
+
+    private final List<ThreadLocalAccessor<?>> readOnlyAccessors;
+
+    private final Set<Object> readOnlyKeys;
+
+    private final boolean changeTracked;
+
+
+    private ThreadLocalAccessorTable(
+            int version, ThreadLocalAccessor<?>[] accessors, GroupedThreadLocalAccessor[] groups, int[] groupIndexes) {
+
+        this.version = version;
+        this.accessors = accessors;
+        this.keys = new Object[accessors.length];
+        for (int slot = 0; slot < accessors.length; slot++) {
+            this.keys[slot] = accessors[slot].key();
+        }
+        this.groups = groups;
+        this.groupIndexes = groupIndexes;
+        this.slotsByKey = (accessors.length > LINEAR_SEARCH_THRESHOLD ? initSlotsByKey(this.keys) : null);
+        this.readOnlyAccessors = Collections.unmodifiableList(Arrays.asList(accessors));
+        this.readOnlyKeys = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(this.keys)));
+        this.changeTracked = initChangeTracked(accessors, groups);
+    }
+
+    private static boolean initChangeTracked(ThreadLocalAccessor<?>[] accessors, GroupedThreadLocalAccessor[] groups) {
+        for (int slot = 0; slot < accessors.length; slot++) {
+            if (!(accessors[slot] instanceof ChangeTrackedThreadLocalAccessor) || groups[slot] != null) {
+                return false;
+            }
+        }
+        return (accessors.length > 0);
+    }
+
+    private static Map<Object, Integer> initSlotsByKey(Object[] keys) {
+        Map<Object, Integer> slotsByKey = new HashMap<>(keys.length * 2);
+        for (int slot = 0; slot < keys.length; slot++) {
+            slotsByKey.put(keys[slot], slot);
+        }
+        return slotsByKey;
+    }
+
+
+    /**
+     * Return the version of the {@link ContextRegistry} that created this table.
+     */
+    int version() {
+        return this.version;
+    }
+
+    /**
+     * Return the number of slots.
+     */
+    int size() {
+        return this.accessors.length;
+    }
+
+    /**
+     * Whether all accessors are {@link ChangeTrackedThreadLocalAccessor}'s,
+     * and a snapshot captured from them can be reused until a value changes.
+     */
+    boolean isChangeTracked() {
+        return this.changeTracked;
+    }
+
+    /**
+     * Return the accessor at the given slot.
+     */
+    ThreadLocalAccessor<?> get(int slot) {
+        return this.accessors[slot];
+    }
+
+    /**
+     * Return the group that the key at the given slot belongs to, or
+     * {@code null} if the slot holds a {@link ThreadLocalAccessor}.
+     */
+    @Nullable
+    GroupedThreadLocalAccessor group(int slot) {
+        return this.groups[slot];
+    }
+
+    /**
+     * Return the index of the key at the given slot in its
+     * {@link #group(int) group}.
+     */
+    int groupIndex(int slot) {
+        return this.groupIndexes[slot];
+    }
+
+    /**
+     * Return the key of the accessor at the given slot.
+     */
+    Object key(int slot) {
+        return this.keys[slot];
+    }
+
+    /**
+     * Return the slot of the accessor with the given key, or -1.
+     */
+    int slotOf(Object key) {
+        if (this.slotsByKey != null) {
+            Integer slot = this.slotsByKey.get(key);
+            return (slot != null ? slot : -1);
+        }
+        for (int slot = 0; slot < this.keys.length; slot++) {
+            if (this.keys[slot].equals(key)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Return a read-only set of the keys in slot order.
+     */
+    Set<Object> keySet() {
+        return this.readOnlyKeys;
+    }
+
+    /**
+     * Return a read-only list of the accessors in slot order.
+     */
+    List<ThreadLocalAccessor<?>> asList() {
+        return this.readOnlyAccessors;
+    }
+
+    /**
+     * Return a new table with the given accessor, in the slot of an existing
+     * accessor with the same key, or else in a new slot.
+     * @param accessor the accessor to add
+     * @param version the registry version for the new table
+     */
+    ThreadLocalAccessorTable withAccessor(ThreadLocalAccessor<?> accessor, int version) {
+        Builder builder = new Builder(this, 1);
+        builder.put(accessor, null, 0);
+        return builder.build(version);
+    }
+
+    /**
+     * Return a new table with a slot for each key of the given group, either
+     * the slot of an existing accessor with the same key, or a new slot.
+     * @param group the group to add
+     * @param version the registry version for the new table
+     */
+    ThreadLocalAccessorTable withGroup(GroupedThreadLocalAccessor group, int version) {
+        List<Object> groupKeys = group.keys();
+        Builder builder = new Builder(this, groupKeys.size());
+        for (int i = 0; i < groupKeys.size(); i++) {
+            builder.put(new GroupMemberAccessor(group, i, groupKeys.get(i)), group, i);
+        }
+        return builder.build(version);
+    }
+
+    @Override
+    public String toString() {
+        return this.readOnlyAccessors.toString();
+    }
+
+
+    /**
+     * Copies of the arrays of a table, with room for additional slots.
+     */
+    private static final class Builder {
+
+        private final ThreadLocalAccessorTable table;
+
+        private ThreadLocalAccessor<?>[] accessors;
+
+        private GroupedThreadLocalAccessor[] groups;
+
+        private int[] groupIndexes;
+
+        private int size;
+
+        Builder(ThreadLocalAccessorTable table, int maxNewSlots) {
+            int capacity = table.accessors.length + maxNewSlots;
+            this.table = table;
+            this.accessors = Arrays.copyOf(table.accessors, capacity);
+            this.groups = Arrays.copyOf(table.groups, capacity);
+            this.groupIndexes = Arrays.copyOf(table.groupIndexes, capacity);
+            this.size = table.accessors.length;
+        }
+
+        void put(ThreadLocalAccessor<?> accessor, @Nullable GroupedThreadLocalAccessor group, int groupIndex) {
+            int slot = this.table.slotOf(accessor.key());
+            if (slot < 0) {
+                slot = newSlotOf(accessor.key());
+            }
+            this.accessors[slot] = accessor;
+            this.groups[slot] = group;
+            this.groupIndexes[slot] = groupIndex;
+        }
+
+        private int newSlotOf(Object key) {
+            for (int slot = this.table.accessors.length; slot < this.size; slot++) {
+                if (this.accessors[slot].key().equals(key)) {
+                    return slot;
+                }
+            }
+            return this.size++;
+        }
+
+        ThreadLocalAccessorTable build(int version) {
+            return new ThreadLocalAccessorTable(version,
+                    Arrays.copyOf(this.accessors, this.size), Arrays.copyOf(this.groups, this.size),
+                    Arrays.copyOf(this.groupIndexes, this.size));
+        }
+    }
+
+
+    /**
+     * {@link ThreadLocalAccessor} for one key of a {@link GroupedThreadLocalAccessor},
+     * which reads and writes the values of the whole group to access it.
+     */
+    private static final class GroupMemberAccessor implements ThreadLocalAccessor<Object> {
+
+        private final GroupedThreadLocalAccessor group;
+
+        private final int index;
+
+        private final Object key;
+
+        GroupMemberAccessor(GroupedThreadLocalAccessor group, int index, Object key) {
+            this.group = group;
+            this.index = index;
+            this.key = key;
+        }
+
+        @Override
+        public Object key() {
+            return this.key;
+        }
+
+        @Override
+        @Nullable
+        public Object getValue() {
+            return readValues()[this.index];
+        }
+
+        @Override
+        public void setValue(Object value) {
+            Object[] values = readValues();
+            values[this.index] = value;
+            this.group.setValues(values);
+        }
+
+        @Override
+        public void reset() {
+            Object[] values = readValues();
+            values[this.index] = null;
+            this.group.setValues(values);
+        }
+
+        private Object[] readValues() {
+            Object[] values = new Object[this.group.keys().size()];
+            this.group.getValues(values);
+            return values;
+        }
+
+        @Override
+        public String toString() {
+            return this.group + "[" + this.key + "]";
+        }
+    }
+
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context;
+
+import java.lang.ref.WeakReference;
+import java.util.function.Predicate;
+
+/**
+ * Holds the last {@link ContextSnapshot} captured on a thread from
+ * {@link ChangeTrackedThreadLocalAccessor}'s only, along with the table and
+ * key predicate it was captured with, until a value changes on the thread.
+ *
+ * <p>A tracker is created on the first capture on a thread, and not when a
+ * value changes on a thread that never captures. The snapshot is held
+ * weakly, so that a pooled thread that is idle after its last capture does
+ * not keep the values of a request reachable.
+ *
+ * @since 1.0.0
+ */
+final class ThreadLocalChangeTracker {
+
+    private static final ThreadLocal<ThreadLocalChangeTracker> tracker = new ThreadLocal<>();
+
+    @Nullable
+    private ThreadLocalAccessorTable table;
+
+    @Nullable
+    private Predicate<Object> keyPredicate;
+
+    @Nullable
+    private WeakReference<ContextSnapshot> snapshot;
+
+
+    private ThreadLocalChangeTracker() {
+    }
+
+
+    /**
+     * Return the last snapshot captured on the current thread, if captured
+     * with the same table and predicate, and no value has changed since.
+     */
+    @Nullable
+    ContextSnapshot getSnapshot(ThreadLocalAccessorTable table, Predicate<Object> keyPredicate) {
+        WeakReference<ContextSnapshot> snapshot = this.snapshot;
+        return (this.table == table && this.keyPredicate == keyPredicate && snapshot != null ? snapshot.get() : null);
+    }
+
+    /**
+     * Keep a snapshot just captured on the current thread.
+     */
+    void setSnapshot(ThreadLocalAccessorTable table, Predicate<Object> keyPredicate, ContextSnapshot snapshot) {
+        this.table = table;
+        this.keyPredicate = keyPredicate;
+        this.snapshot = new WeakReference<>(snapshot);
+    }
+
+    private void clear() {
+        this.table = null;
+        this.keyPredicate = null;
+        this.snapshot = null;
+    }
+
+
+    /**
+     * Return the tracker for the current thread, creating it if necessary.
+     */
+    static ThreadLocalChangeTracker current() {
+        ThreadLocalChangeTracker current = tracker.get();
+        if (current == null) {
+            current = new ThreadLocalChangeTracker();
+            tracker.set(current);
+        }
+        return current;
+    }
+
+    /**
+     * Discard the last snapshot of the current thread, if any, without
+     * creating a tracker for a thread that does not have one.
+     */
+    static void valueChanged() {
+        ThreadLocalChangeTracker current = tracker.get();
+        if (current != null) {
+            current.clear();
+        }
+    }
+
+    /**
+     * Whether the current thread has a tracker.
+     */
+    static boolean hasTracker() {
+        return (tracker.get() != null);
+    }
+
+}
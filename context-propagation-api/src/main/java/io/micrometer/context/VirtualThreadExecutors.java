@@ -0,0 +1,85 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Factory for {@link ExecutorService}'s that start a virtual thread per task,
+ * with the {@link ThreadLocal} values of the submitting thread.
+ *
+ * <p>Values are captured when a task is submitted, and set once when its
+ * thread starts. Unlike {@link ContextSnapshot#instrumentExecutorService},
+ * previous values are neither read nor restored, since each thread starts
+ * without values and ends with the task.
+ *
+ * <p>Virtual threads require Java 21. This is the variant for earlier
+ * versions, which rejects all calls, and the multi-release JAR provides the
+ * implementation for Java 21 and later.
+ *
+ * @since 1.0.0
+ */
+public final class VirtualThreadExecutors {
+
+    private VirtualThreadExecutors() {
+    }
+
+
+    /**
+     * Whether virtual threads are supported on the current runtime.
+     */
+    public static boolean isSupported() {
+        return false;
+    }
+
+    /**
+     * Variant of {@link #newVirtualThreadPerTaskExecutor(ContextRegistry)}
+     * that uses the {@link ContextRegistry#getInstance() global}
+     * ContextRegistry instance.
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        return newVirtualThreadPerTaskExecutor(ContextRegistry.getInstance());
+    }
+
+    /**
+     * Return an {@link ExecutorService} that starts a virtual thread for each
+     * task, like {@code Executors.newVirtualThreadPerTaskExecutor()}, with the
+     * ThreadLocal values of the submitting thread.
+     * @param registry the registry with the accessors to use
+     * @throws UnsupportedOperationException before Java 21
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor(ContextRegistry registry) {
+        throw unsupportedException();
+    }
+
+    /**
+     * Variant of {@link #newVirtualThreadPerTaskExecutor(ContextRegistry)}
+     * with a {@link ThreadFactory} for the threads to start, e.g. from a
+     * {@code Thread.ofVirtual()} builder, to customize thread names.
+     * @param registry the registry with the accessors to use
+     * @param threadFactory the factory for the thread of each task
+     * @throws UnsupportedOperationException before Java 21
+     */
+    public static ExecutorService newThreadPerTaskExecutor(ContextRegistry registry, ThreadFactory threadFactory) {
+        throw unsupportedException();
+    }
+
+    private static UnsupportedOperationException unsupportedException() {
+        return new UnsupportedOperationException("Virtual threads require Java 21 or later");
+    }
+
+}
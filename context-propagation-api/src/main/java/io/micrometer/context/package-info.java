@@ -27,6 +27,10 @@
  * <li>{@link io.micrometer.context.ContextSnapshot} uses the {@code ContextRegistry}
  * and is used to capture context values, and then propagate them from one type
  * of context to another or from one thread to another.
+ * <li>{@link io.micrometer.context.ContextCapturer} captures snapshots for a
+ * fixed selection of keys, resolving the accessors to use only once.
+ * <li>{@link io.micrometer.context.ReactorContextHooks} sets ThreadLocal values
+ * from the Reactor {@code Context} around the signals of each operator.
  * </ul>
  */
 @NonNullApi
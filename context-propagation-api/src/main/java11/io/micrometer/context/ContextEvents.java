@@ -0,0 +1,135 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context;
+
+/**
+ * Hooks for JDK Flight Recorder events for capturing a {@link ContextSnapshot},
+ * setting its {@code ThreadLocal} values, and the lifetime of the
+ * {@link ContextSnapshot.Scope} that restores them.
+ *
+ * <p>Events are disabled by default, and enabled through a recording, e.g.
+ * with a {@code .jfc} settings file, or {@code Recording#enable}. While they
+ * are disabled, a {@code begin} method returns {@code null}, and the cost is
+ * that of checking whether they are enabled. The same goes for a runtime
+ * without the {@code jdk.jfr} module, e.g. an image built with {@code jlink},
+ * where the event classes are never loaded.
+ *
+ * @since 1.0.0
+ * @see ContextCaptureEvent
+ * @see SetThreadLocalValuesEvent
+ * @see ContextScopeEvent
+ */
+final class ContextEvents {
+
+    private static final boolean FLIGHT_RECORDER_PRESENT = isFlightRecorderPresent();
+
+
+    private ContextEvents() {
+    }
+
+
+    private static boolean isFlightRecorderPresent() {
+        try {
+            Class.forName("jdk.jfr.Event", false, ContextEvents.class.getClassLoader());
+            return true;
+        }
+        catch (ClassNotFoundException | LinkageError ex) {
+            return false;
+        }
+    }
+
+    @Nullable
+    static Object beginCapture() {
+        if (!FLIGHT_RECORDER_PRESENT) {
+            return null;
+        }
+        ContextCaptureEvent event = new ContextCaptureEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    static void endCapture(@Nullable Object event, ContextRegistry registry, int snapshotSize, int accessorCount) {
+        if (event == null) {
+            return;
+        }
+        ContextCaptureEvent captureEvent = (ContextCaptureEvent) event;
+        captureEvent.end();
+        if (captureEvent.shouldCommit()) {
+            captureEvent.snapshotSize = snapshotSize;
+            captureEvent.accessorCount = accessorCount;
+            captureEvent.registryVersion = registry.getVersion();
+            captureEvent.commit();
+        }
+    }
+
+    @Nullable
+    static Object beginSetThreadLocalValues() {
+        if (!FLIGHT_RECORDER_PRESENT) {
+            return null;
+        }
+        SetThreadLocalValuesEvent event = new SetThreadLocalValuesEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    static void endSetThreadLocalValues(
+            @Nullable Object event, ContextRegistry registry, int snapshotSize, int accessorCount) {
+
+        if (event == null) {
+            return;
+        }
+        SetThreadLocalValuesEvent setEvent = (SetThreadLocalValuesEvent) event;
+        setEvent.end();
+        if (setEvent.shouldCommit()) {
+            setEvent.snapshotSize = snapshotSize;
+            setEvent.accessorCount = accessorCount;
+            setEvent.registryVersion = registry.getVersion();
+            setEvent.commit();
+        }
+    }
+
+    @Nullable
+    static Object beginScope() {
+        if (!FLIGHT_RECORDER_PRESENT) {
+            return null;
+        }
+        ContextScopeEvent event = new ContextScopeEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    static void endScope(@Nullable Object event, int accessorCount) {
+        if (event == null) {
+            return;
+        }
+        ContextScopeEvent scopeEvent = (ContextScopeEvent) event;
+        scopeEvent.end();
+        if (scopeEvent.shouldCommit()) {
+            scopeEvent.accessorCount = accessorCount;
+            scopeEvent.commit();
+        }
+    }
+
+}
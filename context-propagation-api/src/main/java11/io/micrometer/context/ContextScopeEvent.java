@@ -0,0 +1,43 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight Recorder event for the lifetime of a {@link ContextSnapshot.Scope},
+ * from setting {@code ThreadLocal} values to restoring them on close,
+ * disabled by default.
+ *
+ * @since 1.0.0
+ */
+@Name("io.micrometer.context.ContextScope")
+@Label("Context Scope")
+@Description("Lifetime of a scope with ThreadLocal values from a ContextSnapshot, until they are restored")
+@Category({"Micrometer", "Context Propagation"})
+@Enabled(false)
+final class ContextScopeEvent extends Event {
+
+    @Label("Accessor Count")
+    @Description("The number of ThreadLocal accessors restored, counting a grouped accessor once")
+    int accessorCount;
+
+}
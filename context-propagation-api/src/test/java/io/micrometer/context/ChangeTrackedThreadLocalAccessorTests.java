@@ -0,0 +1,189 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+/**
+ * Unit tests for capturing with {@link ChangeTrackedThreadLocalAccessor}'s.
+ */
+public class ChangeTrackedThreadLocalAccessorTests {
+
+    private static final Predicate<Object> ALL_KEYS = key -> true;
+
+    private final ThreadLocal<String> fooThreadLocal = new ThreadLocal<>();
+
+    private final ThreadLocal<String> barThreadLocal = new ThreadLocal<>();
+
+    private final TestChangeTrackedThreadLocalAccessor fooAccessor =
+            new TestChangeTrackedThreadLocalAccessor("foo", this.fooThreadLocal);
+
+    private final TestChangeTrackedThreadLocalAccessor barAccessor =
+            new TestChangeTrackedThreadLocalAccessor("bar", this.barThreadLocal);
+
+    private final ContextRegistry registry = new ContextRegistry()
+            .registerThreadLocalAccessor(this.fooAccessor)
+            .registerThreadLocalAccessor(this.barAccessor);
+
+
+    @AfterEach
+    void clear() {
+        this.fooAccessor.reset();
+        this.barAccessor.reset();
+    }
+
+
+    @Test
+    void should_reuse_snapshot_while_values_unchanged() {
+        this.fooAccessor.setValue("fooValue");
+
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, ALL_KEYS);
+        int readCount = this.fooAccessor.getReadCount();
+
+        then(ContextSnapshot.capture(this.registry, ALL_KEYS)).isSameAs(snapshot);
+        then(this.fooAccessor.getReadCount()).isEqualTo(readCount);
+
+        this.barAccessor.setValue("barValue");
+        ContextSnapshot changedSnapshot = ContextSnapshot.capture(this.registry, ALL_KEYS);
+
+        then(changedSnapshot).isNotSameAs(snapshot);
+        then(changedSnapshot.toString()).isEqualTo("DefaultContextSnapshot{foo=fooValue, bar=barValue}");
+    }
+
+    @Test
+    void should_not_reuse_snapshot_for_other_predicate() {
+        this.fooAccessor.setValue("fooValue");
+        this.barAccessor.setValue("barValue");
+
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, ALL_KEYS);
+        ContextSnapshot fooSnapshot = ContextSnapshot.capture(this.registry, key -> key.equals("foo"));
+
+        then(fooSnapshot).isNotSameAs(snapshot);
+        then(fooSnapshot.toString()).isEqualTo("DefaultContextSnapshot{foo=fooValue}");
+    }
+
+    @Test
+    void should_not_reuse_snapshot_after_set_and_close() {
+        this.fooAccessor.setValue("fooValue");
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, ALL_KEYS);
+
+        this.fooAccessor.setValue("otherValue");
+        ContextSnapshot otherSnapshot = ContextSnapshot.capture(this.registry, ALL_KEYS);
+
+        try (ContextSnapshot.Scope scope = snapshot.setThreadLocalValues()) {
+            then(ContextSnapshot.capture(this.registry, ALL_KEYS).toString())
+                    .isEqualTo("DefaultContextSnapshot{foo=fooValue}");
+        }
+
+        ContextSnapshot restoredSnapshot = ContextSnapshot.capture(this.registry, ALL_KEYS);
+        then(restoredSnapshot).isNotSameAs(otherSnapshot);
+        then(restoredSnapshot.toString()).isEqualTo("DefaultContextSnapshot{foo=otherValue}");
+    }
+
+    @Test
+    void should_keep_snapshot_per_thread() throws Exception {
+        this.fooAccessor.setValue("fooValue");
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, ALL_KEYS);
+
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            ContextSnapshot otherThreadSnapshot = executorService
+                    .submit(() -> ContextSnapshot.capture(this.registry, ALL_KEYS))
+                    .get(5, TimeUnit.SECONDS);
+
+            then(otherThreadSnapshot).isNotSameAs(snapshot);
+            then(otherThreadSnapshot.toString()).isEqualTo("DefaultContextSnapshot{}");
+        }
+        finally {
+            executorService.shutdown();
+        }
+
+        then(ContextSnapshot.capture(this.registry, ALL_KEYS)).isSameAs(snapshot);
+    }
+
+    @Test
+    void should_reuse_snapshot_with_capturer() {
+        ContextCapturer capturer = ContextCapturer.create(this.registry, ALL_KEYS);
+        this.fooAccessor.setValue("fooValue");
+
+        ContextSnapshot snapshot = capturer.capture();
+        then(capturer.capture()).isSameAs(snapshot);
+
+        this.fooAccessor.reset();
+        then(capturer.capture()).isNotSameAs(snapshot);
+    }
+
+    @Test
+    void should_not_reuse_snapshot_unless_all_accessors_tracked() {
+        ThreadLocal<String> otherThreadLocal = new ThreadLocal<>();
+        this.registry.registerThreadLocalAccessor(new TestThreadLocalAccessor("other", otherThreadLocal));
+        this.fooAccessor.setValue("fooValue");
+
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, ALL_KEYS);
+        otherThreadLocal.set("otherValue");
+
+        then(ContextSnapshot.capture(this.registry, ALL_KEYS).toString())
+                .isEqualTo("DefaultContextSnapshot{foo=fooValue, other=otherValue}");
+        then(ContextSnapshot.capture(this.registry, ALL_KEYS)).isNotSameAs(snapshot);
+
+        otherThreadLocal.remove();
+    }
+
+    @Test
+    void should_not_create_tracker_on_value_change() throws Exception {
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            boolean hasTracker = executorService
+                    .submit(() -> {
+                        this.fooAccessor.setValue("fooValue");
+                        this.fooAccessor.reset();
+                        return ThreadLocalChangeTracker.hasTracker();
+                    })
+                    .get(5, TimeUnit.SECONDS);
+
+            then(hasTracker).isFalse();
+        }
+        finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    void should_not_keep_last_snapshot_reachable() throws Exception {
+        this.fooAccessor.setValue("fooValue");
+        WeakReference<ContextSnapshot> snapshotRef =
+                new WeakReference<>(ContextSnapshot.capture(this.registry, ALL_KEYS));
+
+        for (int i = 0; i < 50 && snapshotRef.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        then(snapshotRef.get()).isNull();
+        then(ContextSnapshot.capture(this.registry, ALL_KEYS).toString())
+                .isEqualTo("DefaultContextSnapshot{foo=fooValue}");
+    }
+
+}
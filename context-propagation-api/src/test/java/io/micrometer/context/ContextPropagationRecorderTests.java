@@ -0,0 +1,156 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+/**
+ * Unit tests for {@link ContextPropagationRecorder}, and the
+ * {@link ContextPropagationListener} callbacks it relies on.
+ */
+public class ContextPropagationRecorderTests {
+
+    private final ThreadLocal<String> fooThreadLocal = new ThreadLocal<>();
+
+    private final ThreadLocal<String> barThreadLocal = new ThreadLocal<>();
+
+    private final ContextPropagationRecorder recorder = new ContextPropagationRecorder();
+
+    private final ContextRegistry registry = new ContextRegistry()
+            .registerContextAccessor(new TestContextAccessor())
+            .registerThreadLocalAccessor(new TestThreadLocalAccessor("foo", this.fooThreadLocal))
+            .registerThreadLocalAccessor(new TestThreadLocalAccessor("bar", this.barThreadLocal))
+            .setPropagationListener(this.recorder);
+
+
+    @AfterEach
+    void clear() {
+        this.fooThreadLocal.remove();
+        this.barThreadLocal.remove();
+    }
+
+
+    @Test
+    void should_record_captures() {
+        this.fooThreadLocal.set("fooValue");
+        this.barThreadLocal.set("barValue");
+
+        ContextSnapshot.capture(this.registry, key -> true);
+        ContextSnapshot.capture(this.registry, key -> key.equals("foo"));
+        ContextCapturer.create(this.registry, key -> true).capture();
+
+        then(this.recorder.getCaptureCount()).isEqualTo(3);
+        then(this.recorder.getCapturedValueCount()).isEqualTo(5);
+    }
+
+    @Test
+    void should_record_set_and_restore_latencies_by_key() {
+        this.fooThreadLocal.set("fooValue");
+        this.barThreadLocal.set("barValue");
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true);
+        clear();
+
+        try (ContextSnapshot.Scope scope = snapshot.setThreadLocalValues()) {
+            then(this.recorder.getSetLatencies()).containsOnlyKeys("foo", "bar");
+            then(this.recorder.getRestoreLatencies()).isEmpty();
+        }
+
+        then(this.recorder.getRestoreLatencies()).containsOnlyKeys("foo", "bar");
+
+        ContextPropagationRecorder.LatencyHistogram histogram = this.recorder.getSetLatencies().get("foo");
+        then(histogram.getCount()).isEqualTo(1);
+        then(Arrays.stream(histogram.getBucketCounts()).sum()).isEqualTo(1);
+    }
+
+    @Test
+    void should_not_record_values_not_set() {
+        this.fooThreadLocal.set("fooValue");
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true);
+
+        try (ContextSnapshot.Scope scope = snapshot.setThreadLocalValues()) {
+            then(this.fooThreadLocal.get()).isEqualTo("fooValue");
+        }
+
+        then(this.recorder.getSetLatencies()).isEmpty();
+        then(this.recorder.getRestoreLatencies()).isEmpty();
+    }
+
+    @Test
+    void should_record_group_by_keys() {
+        TestGroupedThreadLocalAccessor groupAccessor = new TestGroupedThreadLocalAccessor("baz", "qux");
+        this.registry.registerThreadLocalAccessor(groupAccessor);
+
+        groupAccessor.setValue("baz", "bazValue");
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true);
+        groupAccessor.setValue("baz", null);
+
+        snapshot.setThreadLocalValues().close();
+
+        then(this.recorder.getSetLatencies()).containsOnlyKeys((Object) Arrays.asList("baz", "qux"));
+        then(this.recorder.getRestoreLatencies()).containsOnlyKeys((Object) Arrays.asList("baz", "qux"));
+    }
+
+    @Test
+    void should_record_context_updates() {
+        this.fooThreadLocal.set("fooValue");
+        this.barThreadLocal.set("barValue");
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true);
+
+        Map<Object, Object> context = snapshot.updateContext(new HashMap<>());
+
+        then(context).hasSize(2);
+        then(this.recorder.getContextUpdateCount()).isEqualTo(1);
+        then(this.recorder.getContextUpdateValueCount()).isEqualTo(2);
+    }
+
+    @Test
+    void should_not_record_without_listener() {
+        this.registry.setPropagationListener(null);
+        this.fooThreadLocal.set("fooValue");
+
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true);
+        clear();
+        snapshot.setThreadLocalValues().close();
+
+        then(this.recorder.getCaptureCount()).isEqualTo(0);
+        then(this.recorder.getSetLatencies()).isEmpty();
+    }
+
+    @Test
+    void should_bucket_latencies_by_power_of_two() {
+        ContextPropagationRecorder.LatencyHistogram histogram = new ContextPropagationRecorder.LatencyHistogram();
+        histogram.record(0);
+        histogram.record(1);
+        histogram.record(3);
+        histogram.record(1000);
+
+        long[] counts = histogram.getBucketCounts();
+        then(counts[0]).isEqualTo(1);
+        then(counts[1]).isEqualTo(1);
+        then(counts[2]).isEqualTo(1);
+        then(counts[10]).isEqualTo(1);
+        then(histogram.getTotalNanos()).isEqualTo(1004);
+        then(ContextPropagationRecorder.LatencyHistogram.getBucketUpperBound(10)).isEqualTo(1024);
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+/**
+ * Unit tests for {@link ContextRecursiveTask}.
+ */
+public class ContextRecursiveTaskTests {
+
+    private final ThreadLocal<String> threadLocal = new ThreadLocal<>();
+
+    private final AtomicInteger setCount = new AtomicInteger();
+
+    private final ContextRegistry registry = new ContextRegistry()
+            .registerThreadLocalAccessor(new TestThreadLocalAccessor("foo", this.threadLocal) {
+
+                @Override
+                public void setValue(String value) {
+                    setCount.incrementAndGet();
+                    super.setValue(value);
+                }
+            });
+
+
+    @AfterEach
+    void clear() {
+        this.threadLocal.remove();
+    }
+
+    @Test
+    void should_propagate_to_forked_subtasks() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            this.threadLocal.set("fooValue");
+            ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true);
+            Set<String> values = ConcurrentHashMap.newKeySet();
+
+            Integer leafCount = pool.invoke(new CountingTask(snapshot, 10, values));
+
+            then(leafCount).isEqualTo(1024);
+            then(values).containsOnly("fooValue");
+
+            Set<String> valuesAfter = ConcurrentHashMap.newKeySet();
+            pool.invoke(new CountingTask(ContextSnapshot.capture(new ContextRegistry(), key -> true), 6, valuesAfter));
+            then(valuesAfter).containsOnly("null");
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void should_not_set_values_again_on_same_worker_thread() {
+        ForkJoinPool pool = new ForkJoinPool(1);
+        try {
+            this.threadLocal.set("fooValue");
+            ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true);
+            Set<String> values = ConcurrentHashMap.newKeySet();
+
+            Integer leafCount = pool.invoke(new CountingTask(snapshot, 8, values));
+
+            then(leafCount).isEqualTo(256);
+            then(values).containsOnly("fooValue");
+            then(this.setCount.get()).isEqualTo(1);
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+
+    private class CountingTask extends ContextRecursiveTask<Integer> {
+
+        private final int depth;
+
+        private final Set<String> values;
+
+        CountingTask(ContextSnapshot snapshot, int depth, Set<String> values) {
+            super(snapshot);
+            this.depth = depth;
+            this.values = values;
+        }
+
+        @Override
+        protected Integer computeWithContext() {
+            if (this.depth == 0) {
+                this.values.add(String.valueOf(threadLocal.get()));
+                return 1;
+            }
+            CountingTask left = new CountingTask(getContextSnapshot(), this.depth - 1, this.values);
+            CountingTask right = new CountingTask(getContextSnapshot(), this.depth - 1, this.values);
+            left.fork();
+            return right.compute() + left.join();
+        }
+    }
+
+}
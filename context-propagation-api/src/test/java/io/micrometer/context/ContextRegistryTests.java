@@ -15,10 +15,13 @@
  */
 package io.micrometer.context;
 
+import java.util.HashMap;
+import java.util.Map;
 
 import org.junit.jupiter.api.Test;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 /**
  * Unit tests for {@link ContextRegistry}.
@@ -42,6 +45,49 @@ public class ContextRegistryTests {
         assertThat(this.registry.getContextAccessors()).containsExactly(contextAccessor2);
     }
 
+    @Test
+    void should_find_context_accessor_registered_after_failed_lookup() {
+        Map<String, String> context = new HashMap<>();
+
+        assertThatThrownBy(() -> this.registry.getContextAccessorForRead(context))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("No ContextAccessor for contextType");
+        assertThatThrownBy(() -> this.registry.getContextAccessorForWrite(context))
+                .isInstanceOf(IllegalStateException.class);
+
+        TestContextAccessor contextAccessor = new TestContextAccessor();
+        this.registry.registerContextAccessor(contextAccessor);
+
+        assertThat(this.registry.getContextAccessorForRead(context)).isSameAs(contextAccessor);
+        assertThat(this.registry.getContextAccessorForWrite(context)).isSameAs(contextAccessor);
+    }
+
+    @Test
+    void should_return_null_for_context_type_without_context_accessor() {
+        assertThat(this.registry.findContextAccessorForRead(HashMap.class)).isNull();
+        assertThat(this.registry.findContextAccessorForWrite(HashMap.class)).isNull();
+
+        TestContextAccessor contextAccessor = new TestContextAccessor();
+        this.registry.registerContextAccessor(contextAccessor);
+
+        assertThat(this.registry.findContextAccessorForRead(HashMap.class)).isSameAs(contextAccessor);
+        assertThat(this.registry.findContextAccessorForWrite(HashMap.class)).isSameAs(contextAccessor);
+    }
+
+    @Test
+    void should_find_replacement_of_previously_found_context_accessor() {
+        Map<String, String> context = new HashMap<>();
+        TestContextAccessor contextAccessor1 = new TestContextAccessor();
+        TestContextAccessor contextAccessor2 = new TestContextAccessor();
+
+        this.registry.registerContextAccessor(contextAccessor1);
+        assertThat(this.registry.getContextAccessorForRead(context)).isSameAs(contextAccessor1);
+
+        this.registry.registerContextAccessor(contextAccessor2);
+        assertThat(this.registry.getContextAccessorForRead(context)).isSameAs(contextAccessor2);
+        assertThat(this.registry.getContextAccessorForWrite(context)).isSameAs(contextAccessor2);
+    }
+
     @Test
     void should_remove_existing_thread_local_accessors_for_same_key() {
         TestThreadLocalAccessor accessor1 = new TestThreadLocalAccessor("foo", new ThreadLocal<>());
@@ -58,4 +104,40 @@ public class ContextRegistryTests {
         assertThat(this.registry.getThreadLocalAccessors()).containsExactly(accessor2, accessor3);
     }
 
+    @Test
+    void should_keep_slot_of_replaced_thread_local_accessor() {
+        TestThreadLocalAccessor accessor1 = new TestThreadLocalAccessor("foo", new ThreadLocal<>());
+        TestThreadLocalAccessor accessor2 = new TestThreadLocalAccessor("bar", new ThreadLocal<>());
+        TestThreadLocalAccessor accessor3 = new TestThreadLocalAccessor("foo", new ThreadLocal<>());
+
+        this.registry.registerThreadLocalAccessor(accessor1).registerThreadLocalAccessor(accessor2);
+        ThreadLocalAccessorTable table = this.registry.getThreadLocalAccessorTable();
+        assertThat(table.slotOf("foo")).isEqualTo(0);
+        assertThat(table.slotOf("bar")).isEqualTo(1);
+
+        this.registry.registerThreadLocalAccessor(accessor3);
+        ThreadLocalAccessorTable newTable = this.registry.getThreadLocalAccessorTable();
+        assertThat(newTable.version()).isEqualTo(table.version() + 1);
+        assertThat(newTable.slotOf("foo")).isEqualTo(0);
+        assertThat(newTable.get(0)).isSameAs(accessor3);
+        assertThat(newTable.slotOf("baz")).isEqualTo(-1);
+
+        assertThat(table.get(0)).as("Existing table should not change").isSameAs(accessor1);
+    }
+
+    @Test
+    void should_find_slots_in_large_thread_local_accessor_table() {
+        for (int i = 0; i < 20; i++) {
+            this.registry.registerThreadLocalAccessor(new TestThreadLocalAccessor("key" + i, new ThreadLocal<>()));
+        }
+        this.registry.registerThreadLocalAccessor(new TestThreadLocalAccessor("key5", new ThreadLocal<>()));
+
+        ThreadLocalAccessorTable table = this.registry.getThreadLocalAccessorTable();
+        assertThat(table.size()).isEqualTo(20);
+        for (int i = 0; i < 20; i++) {
+            assertThat(table.slotOf("key" + i)).isEqualTo(i);
+        }
+        assertThat(table.slotOf("key20")).isEqualTo(-1);
+    }
+
 }
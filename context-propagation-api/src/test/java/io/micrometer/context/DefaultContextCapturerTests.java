@@ -0,0 +1,181 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+/**
+ * Unit tests for {@link DefaultContextCapturer}.
+ */
+public class DefaultContextCapturerTests {
+
+    private final ContextRegistry registry = new ContextRegistry();
+
+    private final ThreadLocal<String> fooThreadLocal = new ThreadLocal<>();
+
+    private final ThreadLocal<String> barThreadLocal = new ThreadLocal<>();
+
+
+    @AfterEach
+    void clear() {
+        this.fooThreadLocal.remove();
+        this.barThreadLocal.remove();
+    }
+
+
+    @Test
+    void should_capture_selected_thread_locals() {
+        this.registry
+                .registerThreadLocalAccessor(new TestThreadLocalAccessor("foo", this.fooThreadLocal))
+                .registerThreadLocalAccessor(new TestThreadLocalAccessor("bar", this.barThreadLocal));
+
+        ContextCapturer capturer = ContextCapturer.create(this.registry, key -> key.equals("foo"));
+
+        this.fooThreadLocal.set("fooValue");
+        this.barThreadLocal.set("barValue");
+
+        ContextSnapshot snapshot = capturer.capture();
+        clear();
+
+        try (ContextSnapshot.Scope scope = snapshot.setThreadLocalValues()) {
+            then(this.fooThreadLocal.get()).isEqualTo("fooValue");
+            then(this.barThreadLocal.get()).isNull();
+        }
+    }
+
+    @Test
+    void should_capture_from_expected_context_type() {
+        this.registry
+                .registerContextAccessor(new TestContextAccessor())
+                .registerThreadLocalAccessor(new TestThreadLocalAccessor("foo", this.fooThreadLocal));
+
+        ContextCapturer capturer = ContextCapturer.forKeys(
+                this.registry, Collections.singleton("foo"), Map.class);
+
+        Map<String, String> sourceContext = new HashMap<>();
+        sourceContext.put("foo", "fooValue");
+        ContextSnapshot snapshot = capturer.capture(sourceContext);
+
+        try (ContextSnapshot.Scope scope = snapshot.setThreadLocalValues()) {
+            then(this.fooThreadLocal.get()).isEqualTo("fooValue");
+        }
+        then(this.fooThreadLocal.get()).isNull();
+    }
+
+    @Test
+    void should_use_accessors_registered_after_creation() {
+        this.registry.registerThreadLocalAccessor(new TestThreadLocalAccessor("foo", this.fooThreadLocal));
+
+        ContextCapturer capturer = ContextCapturer.create(this.registry, key -> true);
+
+        this.fooThreadLocal.set("fooValue");
+        this.barThreadLocal.set("barValue");
+        then(capturer.capture().toString()).isEqualTo("DefaultContextSnapshot{foo=fooValue}");
+
+        this.registry.registerThreadLocalAccessor(new TestThreadLocalAccessor("bar", this.barThreadLocal));
+        then(capturer.capture().toString()).isEqualTo("DefaultContextSnapshot{foo=fooValue, bar=barValue}");
+    }
+
+    @Test
+    void should_reuse_previous_snapshot_while_values_unchanged() {
+        this.registry
+                .registerThreadLocalAccessor(new TestThreadLocalAccessor("foo", this.fooThreadLocal))
+                .registerThreadLocalAccessor(new TestThreadLocalAccessor("bar", this.barThreadLocal));
+
+        DefaultContextCapturer capturer = (DefaultContextCapturer) ContextCapturer.create(this.registry, key -> true);
+
+        this.fooThreadLocal.set("fooValue");
+        ContextSnapshot snapshot = capturer.captureOrReuse(null);
+        then(capturer.captureOrReuse(snapshot)).isSameAs(snapshot);
+
+        this.barThreadLocal.set("barValue");
+        ContextSnapshot changedSnapshot = capturer.captureOrReuse(snapshot);
+        then(changedSnapshot).isNotSameAs(snapshot);
+        then(changedSnapshot.toString()).isEqualTo("DefaultContextSnapshot{foo=fooValue, bar=barValue}");
+
+        this.barThreadLocal.remove();
+        then(capturer.captureOrReuse(changedSnapshot)).isNotSameAs(changedSnapshot);
+
+        this.fooThreadLocal.set(new String("fooValue"));
+        then(capturer.captureOrReuse(snapshot))
+                .as("Values are compared by identity")
+                .isNotSameAs(snapshot);
+    }
+
+    @Test
+    void should_not_reuse_previous_snapshot_after_registration() {
+        this.registry.registerThreadLocalAccessor(new TestThreadLocalAccessor("foo", this.fooThreadLocal));
+
+        DefaultContextCapturer capturer = (DefaultContextCapturer) ContextCapturer.create(this.registry, key -> true);
+
+        this.fooThreadLocal.set("fooValue");
+        ContextSnapshot snapshot = capturer.captureOrReuse(null);
+
+        this.registry.registerThreadLocalAccessor(new TestThreadLocalAccessor("bar", this.barThreadLocal));
+        then(capturer.captureOrReuse(snapshot)).isNotSameAs(snapshot);
+    }
+
+    @Test
+    void should_reuse_snapshot_across_executor_submissions_while_values_unchanged() throws Exception {
+        this.registry.registerThreadLocalAccessor(new TestThreadLocalAccessor("foo", this.fooThreadLocal));
+
+        ContextCapturer capturer = ContextCapturer.create(this.registry, key -> true);
+        InstrumentedExecutorService executor = (InstrumentedExecutorService) capturer
+                .instrumentExecutorService(Executors.newSingleThreadExecutor());
+        try {
+            this.fooThreadLocal.set("fooValue");
+            ContextSnapshot snapshot = executor.getContextSnapshot();
+            then(executor.submit(this.fooThreadLocal::get).get()).isEqualTo("fooValue");
+            then(executor.getContextSnapshot()).isSameAs(snapshot);
+
+            this.fooThreadLocal.set("otherValue");
+            then(executor.getContextSnapshot()).isNotSameAs(snapshot);
+            then(executor.submit(this.fooThreadLocal::get).get()).isEqualTo("otherValue");
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void should_not_keep_reused_snapshot_reachable() throws Exception {
+        this.registry.registerThreadLocalAccessor(new TestThreadLocalAccessor("foo", this.fooThreadLocal));
+
+        ContextCapturer capturer = ContextCapturer.create(this.registry, key -> true);
+        CapturingContextSnapshotSupplier supplier = new CapturingContextSnapshotSupplier(capturer);
+
+        this.fooThreadLocal.set("fooValue");
+        WeakReference<ContextSnapshot> snapshotRef = new WeakReference<>(supplier.get());
+
+        for (int i = 0; i < 50 && snapshotRef.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+
+        then(snapshotRef.get()).isNull();
+        then(supplier.get().toString()).isEqualTo("DefaultContextSnapshot{foo=fooValue}");
+    }
+
+}
@@ -15,6 +15,10 @@
  */
 package io.micrometer.context;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import org.junit.jupiter.api.Test;
 
@@ -144,6 +148,130 @@ public class DefaultContextSnapshotTests {
         then(barThreadLocal.get()).isNull();
     }
 
+    @Test
+    void should_override_thread_local_values_with_context_values() {
+        ThreadLocal<String> fooThreadLocal = new ThreadLocal<>();
+        ThreadLocal<String> barThreadLocal = new ThreadLocal<>();
+
+        this.registry
+                .registerContextAccessor(new TestContextAccessor())
+                .registerThreadLocalAccessor(new TestThreadLocalAccessor("foo", fooThreadLocal))
+                .registerThreadLocalAccessor(new TestThreadLocalAccessor("bar", barThreadLocal));
+
+        fooThreadLocal.set("fooValue");
+        barThreadLocal.set("barValue");
+
+        Map<String, String> sourceContext = new HashMap<>();
+        sourceContext.put("bar", "barContextValue");
+        sourceContext.put("baz", "bazContextValue");
+
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true, sourceContext);
+
+        fooThreadLocal.remove();
+        barThreadLocal.remove();
+
+        Map<Object, Object> targetContext = snapshot.updateContext(new HashMap<>());
+        then(targetContext).containsOnlyKeys("foo", "bar", "baz");
+        then(targetContext).containsEntry("foo", "fooValue");
+        then(targetContext).containsEntry("bar", "barContextValue");
+        then(targetContext).containsEntry("baz", "bazContextValue");
+
+        try (ContextSnapshot.Scope scope = snapshot.setThreadLocalValues()) {
+            then(fooThreadLocal.get()).isEqualTo("fooValue");
+            then(barThreadLocal.get()).isEqualTo("barContextValue");
+        }
+    }
+
+    @Test
+    void should_set_thread_local_registered_after_capture() {
+        ThreadLocal<String> fooThreadLocal = new ThreadLocal<>();
+        this.registry.registerContextAccessor(new TestContextAccessor());
+
+        Map<String, String> sourceContext = new HashMap<>();
+        sourceContext.put("foo", "fooValue");
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true, sourceContext);
+
+        this.registry.registerThreadLocalAccessor(new TestThreadLocalAccessor("foo", fooThreadLocal));
+
+        try (ContextSnapshot.Scope scope = snapshot.setThreadLocalValues()) {
+            then(fooThreadLocal.get()).isEqualTo("fooValue");
+        }
+
+        then(fooThreadLocal.get()).isNull();
+    }
+
+    @Test
+    void should_filter_values_on_update_context() {
+        ThreadLocal<String> fooThreadLocal = new ThreadLocal<>();
+        ThreadLocal<String> barThreadLocal = new ThreadLocal<>();
+
+        this.registry
+                .registerContextAccessor(new TestContextAccessor())
+                .registerThreadLocalAccessor(new TestThreadLocalAccessor("foo", fooThreadLocal))
+                .registerThreadLocalAccessor(new TestThreadLocalAccessor("bar", barThreadLocal));
+
+        fooThreadLocal.set("fooValue");
+        barThreadLocal.set("barValue");
+
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true);
+
+        fooThreadLocal.remove();
+        barThreadLocal.remove();
+
+        Map<Object, Object> targetContext = snapshot.updateContext(new HashMap<>(), key -> key.equals("bar"));
+        then(targetContext).containsOnlyKeys("bar");
+        then(targetContext).containsEntry("bar", "barValue");
+    }
+
+    @Test
+    void should_reset_only_values_that_were_set_in_reverse_order() {
+        List<String> operations = new ArrayList<>();
+
+        this.registry
+                .registerThreadLocalAccessor(new RecordingThreadLocalAccessor("foo", operations))
+                .registerThreadLocalAccessor(new RecordingThreadLocalAccessor("bar", operations))
+                .registerThreadLocalAccessor(new RecordingThreadLocalAccessor("baz", operations));
+
+        Map<String, String> sourceContext = new HashMap<>();
+        sourceContext.put("foo", "fooValue");
+        sourceContext.put("baz", "bazValue");
+        this.registry.registerContextAccessor(new TestContextAccessor());
+
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true, sourceContext);
+        operations.clear();
+
+        snapshot.setThreadLocalValues().close();
+
+        assertThat(operations).containsExactly("set foo", "set baz", "reset baz", "reset foo");
+    }
+
+    @Test
+    void should_not_set_or_reset_values_already_present() {
+        List<String> operations = new ArrayList<>();
+        RecordingThreadLocalAccessor fooAccessor = new RecordingThreadLocalAccessor("foo", operations);
+        RecordingThreadLocalAccessor barAccessor = new RecordingThreadLocalAccessor("bar", operations);
+
+        this.registry.registerThreadLocalAccessor(fooAccessor).registerThreadLocalAccessor(barAccessor);
+
+        fooAccessor.setValue("fooValue");
+        barAccessor.setValue("barValue");
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true);
+        barAccessor.setValue("otherBarValue");
+        operations.clear();
+
+        try (ContextSnapshot.Scope scope = snapshot.setThreadLocalValues()) {
+            then(fooAccessor.getValue()).isEqualTo("fooValue");
+            then(barAccessor.getValue()).isEqualTo("barValue");
+        }
+        then(fooAccessor.getValue()).isEqualTo("fooValue");
+        then(barAccessor.getValue()).isEqualTo("otherBarValue");
+
+        assertThat(operations).containsExactly("set bar", "set bar");
+
+        fooAccessor.reset();
+        barAccessor.reset();
+    }
+
     @Test
     void toString_should_include_values() {
         ThreadLocal<String> fooThreadLocal = new ThreadLocal<>();
@@ -157,10 +285,68 @@ public class DefaultContextSnapshotTests {
         barThreadLocal.set("barValue");
 
         assertThat(ContextSnapshot.capture(this.registry, key -> true).toString())
-                .isEqualTo("DefaultContextSnapshot{bar=barValue, foo=fooValue}");
+                .isEqualTo("DefaultContextSnapshot{foo=fooValue, bar=barValue}");
+
+        fooThreadLocal.remove();
+        barThreadLocal.remove();
+    }
+
+    @Test
+    void should_restore_previous_values_on_each_run_of_periodic_task() {
+        ThreadLocal<String> fooThreadLocal = new ThreadLocal<>();
+        ThreadLocal<String> barThreadLocal = new ThreadLocal<>();
+
+        this.registry
+                .registerThreadLocalAccessor(new TestThreadLocalAccessor("foo", fooThreadLocal))
+                .registerThreadLocalAccessor(new TestThreadLocalAccessor("bar", barThreadLocal));
+
+        fooThreadLocal.set("fooValue");
+        barThreadLocal.set("barValue");
+
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true);
+        List<String> values = new ArrayList<>();
+        Runnable task = ((DefaultContextSnapshot) snapshot).instrumentPeriodicRunnable(
+                () -> values.add(fooThreadLocal.get() + "," + barThreadLocal.get()));
 
         fooThreadLocal.remove();
         barThreadLocal.remove();
+        task.run();
+
+        then(fooThreadLocal.get()).isNull();
+        then(barThreadLocal.get()).isNull();
+
+        fooThreadLocal.set("previousFoo");
+        task.run();
+
+        then(fooThreadLocal.get()).isEqualTo("previousFoo");
+        then(barThreadLocal.get()).isNull();
+        then(values).containsExactly("fooValue,barValue", "fooValue,barValue");
+
+        fooThreadLocal.remove();
+    }
+
+
+    private static class RecordingThreadLocalAccessor extends TestThreadLocalAccessor {
+
+        private final List<String> operations;
+
+        RecordingThreadLocalAccessor(String key, List<String> operations) {
+            super(key, new ThreadLocal<>());
+            this.operations = operations;
+        }
+
+        @Override
+        public void setValue(String value) {
+            this.operations.add("set " + key());
+            super.setValue(value);
+        }
+
+        @Override
+        public void reset() {
+            this.operations.add("reset " + key());
+            super.reset();
+        }
+
     }
 
 }
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+/**
+ * Unit tests for {@link GroupedThreadLocalAccessor} support in
+ * {@link ContextRegistry} and {@link ContextSnapshot}.
+ */
+public class GroupedThreadLocalAccessorTests {
+
+    private final ContextRegistry registry = new ContextRegistry();
+
+    private final TestGroupedThreadLocalAccessor groupAccessor = new TestGroupedThreadLocalAccessor("foo", "bar");
+
+    private final ThreadLocal<String> threadLocal = new ThreadLocal<>();
+
+
+    @AfterEach
+    void clear() {
+        this.groupAccessor.reset();
+        this.threadLocal.remove();
+    }
+
+
+    @Test
+    void should_capture_and_restore_group_in_one_call_each() {
+        this.registry.registerThreadLocalAccessor(this.groupAccessor);
+
+        this.groupAccessor.setValue("foo", "fooValue");
+        this.groupAccessor.setValue("bar", "barValue");
+
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true);
+        then(this.groupAccessor.getCalls()).containsExactly("get");
+        clear();
+        this.groupAccessor.getCalls().clear();
+
+        try (ContextSnapshot.Scope scope = snapshot.setThreadLocalValues()) {
+            then(this.groupAccessor.getValue("foo")).isEqualTo("fooValue");
+            then(this.groupAccessor.getValue("bar")).isEqualTo("barValue");
+        }
+        then(this.groupAccessor.getValue("foo")).isNull();
+        then(this.groupAccessor.getValue("bar")).isNull();
+
+        then(this.groupAccessor.getCalls()).containsExactly("get", "set [fooValue, barValue]", "reset");
+    }
+
+    @Test
+    void should_restore_previous_group_values() {
+        this.registry.registerThreadLocalAccessor(this.groupAccessor);
+
+        this.groupAccessor.setValue("foo", "fooValue");
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true);
+
+        this.groupAccessor.setValue("foo", "previousFooValue");
+        this.groupAccessor.setValue("bar", "previousBarValue");
+
+        try (ContextSnapshot.Scope scope = snapshot.setThreadLocalValues()) {
+            then(this.groupAccessor.getValue("foo")).isEqualTo("fooValue");
+            then(this.groupAccessor.getValue("bar")).isEqualTo("previousBarValue");
+        }
+        then(this.groupAccessor.getValue("foo")).isEqualTo("previousFooValue");
+        then(this.groupAccessor.getValue("bar")).isEqualTo("previousBarValue");
+    }
+
+    @Test
+    void should_skip_group_values_already_present() {
+        this.registry.registerThreadLocalAccessor(this.groupAccessor);
+
+        this.groupAccessor.setValue("foo", "fooValue");
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true);
+        this.groupAccessor.getCalls().clear();
+
+        try (ContextSnapshot.Scope scope = snapshot.setThreadLocalValues()) {
+            then(this.groupAccessor.getValue("foo")).isEqualTo("fooValue");
+        }
+        then(this.groupAccessor.getValue("foo")).isEqualTo("fooValue");
+        then(this.groupAccessor.getCalls()).containsExactly("get");
+    }
+
+    @Test
+    void should_replace_group_key_with_thread_local_accessor() {
+        TestThreadLocalAccessor barAccessor = new TestThreadLocalAccessor("bar", this.threadLocal);
+        this.registry.registerThreadLocalAccessor(this.groupAccessor).registerThreadLocalAccessor(barAccessor);
+        this.registry.registerContextAccessor(new TestContextAccessor());
+
+        ThreadLocalAccessorTable table = this.registry.getThreadLocalAccessorTable();
+        then(table.size()).isEqualTo(2);
+        then(table.group(0)).isSameAs(this.groupAccessor);
+        then(table.group(1)).isNull();
+        then(table.get(1)).isSameAs(barAccessor);
+
+        this.groupAccessor.setValue("foo", "fooValue");
+        this.groupAccessor.setValue("bar", "groupBarValue");
+        this.threadLocal.set("barValue");
+
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true);
+        Map<Object, Object> values = snapshot.updateContext(new HashMap<>());
+        then(values).containsOnlyKeys("foo", "bar").containsEntry("foo", "fooValue").containsEntry("bar", "barValue");
+    }
+
+    @Test
+    void should_replace_thread_local_accessor_with_group_key() {
+        TestThreadLocalAccessor barAccessor = new TestThreadLocalAccessor("bar", this.threadLocal);
+        this.registry.registerThreadLocalAccessor(barAccessor).registerThreadLocalAccessor(this.groupAccessor);
+
+        ThreadLocalAccessorTable table = this.registry.getThreadLocalAccessorTable();
+        then(table.slotOf("bar")).isEqualTo(0);
+        then(table.slotOf("foo")).isEqualTo(1);
+        then(table.group(0)).isSameAs(this.groupAccessor);
+        then(table.groupIndex(0)).isEqualTo(1);
+        then(this.registry.getThreadLocalAccessors()).hasSize(2);
+    }
+
+    @Test
+    void should_set_values_of_group_registered_after_capture() {
+        this.registry.registerContextAccessor(new TestContextAccessor());
+        ContextSnapshot snapshot =
+                ContextSnapshot.capture(this.registry, key -> true, Collections.singletonMap("bar", "barValue"));
+
+        this.registry.registerThreadLocalAccessor(this.groupAccessor);
+
+        try (ContextSnapshot.Scope scope = snapshot.setThreadLocalValues()) {
+            then(this.groupAccessor.getValue("bar")).isEqualTo("barValue");
+        }
+        then(this.groupAccessor.getValue("bar")).isNull();
+    }
+
+    @Test
+    void should_capture_group_with_capturer() {
+        this.registry.registerThreadLocalAccessor(this.groupAccessor);
+        this.registry.registerContextAccessor(new TestContextAccessor());
+        ContextCapturer capturer = ContextCapturer.create(this.registry, key -> key.equals("bar"));
+
+        this.groupAccessor.setValue("foo", "fooValue");
+        this.groupAccessor.setValue("bar", "barValue");
+
+        Map<Object, Object> values = capturer.capture().updateContext(new HashMap<>());
+        then(values).containsOnlyKeys("bar");
+    }
+
+}
@@ -16,15 +16,28 @@
 package io.micrometer.context;
 
 import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
@@ -124,6 +137,220 @@ class InstrumentationTests {
         }
     }
 
+    @Test
+    void should_capture_for_each_task_with_capturer() throws Exception {
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            ContextCapturer capturer = ContextCapturer.create(this.registry, key -> true);
+            ExecutorService instrumented = capturer.instrumentExecutorService(executorService);
+            AtomicReference<String> valueInNewThread = new AtomicReference<>();
+
+            ObservationThreadLocalHolder.setValue("hello");
+            runInNewThread(instrumented, valueInNewThread,
+                    atomic -> then(atomic.get()).isEqualTo("hello"));
+
+            ObservationThreadLocalHolder.setValue("world");
+            runInNewThread(instrumented, valueInNewThread,
+                    atomic -> then(atomic.get())
+                            .as("Values should be captured on the submitting thread for each task")
+                            .isEqualTo("world"));
+
+            ObservationThreadLocalHolder.reset();
+            instrumented.submit(runnable(valueInNewThread)).get(5, TimeUnit.SECONDS);
+            then(valueInNewThread.get()).isNull();
+        }
+        finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    void should_instrument_scheduled_executor_service() throws Exception {
+        ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+        try {
+            ObservationThreadLocalHolder.setValue("hello");
+            AtomicReference<String> valueInNewThread = new AtomicReference<>();
+            ScheduledExecutorService instrumented =
+                    ContextSnapshot.capture(this.registry, key -> true).instrumentScheduledExecutorService(executorService);
+
+            runInNewThread(instrumented, valueInNewThread,
+                    atomic -> then(atomic.get())
+                            .as("With context container the thread local information should be propagated")
+                            .isEqualTo("hello"));
+
+            instrumented.schedule(runnable(valueInNewThread), 1, TimeUnit.MILLISECONDS).get(5, TimeUnit.SECONDS);
+            then(valueInNewThread.get()).isEqualTo("hello");
+
+            valueInNewThread.set(null);
+            instrumented.schedule(callable(valueInNewThread), 1, TimeUnit.MILLISECONDS).get(5, TimeUnit.SECONDS);
+            then(valueInNewThread.get()).isEqualTo("hello");
+
+            List<String> values = new CopyOnWriteArrayList<>();
+            CountDownLatch latch = new CountDownLatch(3);
+            Runnable periodicTask = () -> {
+                values.add(ObservationThreadLocalHolder.getValue());
+                latch.countDown();
+            };
+
+            ScheduledFuture<?> future = instrumented.scheduleAtFixedRate(periodicTask, 0, 1, TimeUnit.MILLISECONDS);
+            then(latch.await(5, TimeUnit.SECONDS)).isTrue();
+            future.cancel(false);
+            then(values).containsOnly("hello");
+
+            values.clear();
+            CountDownLatch delayLatch = new CountDownLatch(3);
+            future = instrumented.scheduleWithFixedDelay(() -> {
+                values.add(ObservationThreadLocalHolder.getValue());
+                delayLatch.countDown();
+            }, 0, 1, TimeUnit.MILLISECONDS);
+            then(delayLatch.await(5, TimeUnit.SECONDS)).isTrue();
+            future.cancel(false);
+            then(values).containsOnly("hello");
+
+            executorService.submit(runnable(valueInNewThread)).get(5, TimeUnit.SECONDS);
+            then(valueInNewThread.get())
+                    .as("Thread local information should be restored after each run")
+                    .isNull();
+        }
+        finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    void should_instrument_spliterator() {
+        ObservationThreadLocalHolder.setValue("hello");
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true);
+        ObservationThreadLocalHolder.reset();
+
+        Spliterator<Integer> spliterator = snapshot.instrumentSpliterator(
+                IntStream.range(0, 100).boxed().collect(Collectors.toList()).spliterator());
+
+        List<String> values = new CopyOnWriteArrayList<>();
+        spliterator.tryAdvance(i -> values.add(ObservationThreadLocalHolder.getValue()));
+        then(ObservationThreadLocalHolder.getValue()).isNull();
+
+        Spliterator<Integer> split = spliterator.trySplit();
+        then(split).isNotNull();
+        split.forEachRemaining(i -> values.add(ObservationThreadLocalHolder.getValue()));
+        spliterator.forEachRemaining(i -> values.add(ObservationThreadLocalHolder.getValue()));
+
+        then(values).hasSize(100).containsOnly("hello");
+        then(ObservationThreadLocalHolder.getValue()).isNull();
+    }
+
+    @Test
+    void should_instrument_parallel_stream() {
+        ObservationThreadLocalHolder.setValue("hello");
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true);
+
+        Set<String> values = ConcurrentHashMap.newKeySet();
+        List<Integer> result = snapshot.instrumentStream(IntStream.range(0, 10_000).boxed().parallel())
+                .map(i -> {
+                    values.add(String.valueOf(ObservationThreadLocalHolder.getValue()));
+                    return i;
+                })
+                .collect(Collectors.toList());
+
+        then(result).hasSize(10_000);
+        then(values).containsOnly("hello");
+
+        Set<String> valuesAfter = ConcurrentHashMap.newKeySet();
+        ObservationThreadLocalHolder.reset();
+        Stream.of(1, 2, 3, 4).parallel()
+                .forEach(i -> valuesAfter.add(String.valueOf(ObservationThreadLocalHolder.getValue())));
+        then(valuesAfter).containsOnly("null");
+    }
+
+    @Test
+    void should_close_instrumented_stream() {
+        List<String> closed = new CopyOnWriteArrayList<>();
+        Stream<Integer> stream = Stream.of(1, 2, 3).onClose(() -> closed.add("closed"));
+
+        ContextSnapshot.capture(this.registry, key -> true).instrumentStream(stream).close();
+
+        then(closed).containsExactly("closed");
+    }
+
+    @Test
+    void should_instrument_functional_interfaces() throws Exception {
+        ObservationThreadLocalHolder.setValue("hello");
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true);
+        ObservationThreadLocalHolder.reset();
+        List<String> values = new CopyOnWriteArrayList<>();
+
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            String supplied = executorService.submit(
+                    () -> snapshot.instrumentSupplier(ObservationThreadLocalHolder::getValue).get())
+                    .get(5, TimeUnit.SECONDS);
+
+            String applied = executorService.submit(
+                    () -> snapshot.<String, String>instrumentFunction(s -> s + ObservationThreadLocalHolder.getValue())
+                            .apply("function:"))
+                    .get(5, TimeUnit.SECONDS);
+
+            String biApplied = executorService.submit(
+                    () -> snapshot.<String, String, String>instrumentBiFunction(
+                            (s1, s2) -> s1 + s2 + ObservationThreadLocalHolder.getValue())
+                            .apply("bi", "function:"))
+                    .get(5, TimeUnit.SECONDS);
+
+            executorService.submit(
+                    () -> snapshot.<String, String>instrumentBiConsumer(
+                            (s1, s2) -> values.add(s1 + s2 + ObservationThreadLocalHolder.getValue()))
+                            .accept("bi", "consumer:"))
+                    .get(5, TimeUnit.SECONDS);
+
+            then(supplied).isEqualTo("hello");
+            then(applied).isEqualTo("function:hello");
+            then(biApplied).isEqualTo("bifunction:hello");
+            then(values).containsExactly("biconsumer:hello");
+
+            executorService.submit(runnable(new AtomicReference<>())).get(5, TimeUnit.SECONDS);
+            then(executorService.submit(ObservationThreadLocalHolder::getValue).get(5, TimeUnit.SECONDS)).isNull();
+        }
+        finally {
+            executorService.shutdown();
+        }
+    }
+
+    @Test
+    void should_instrument_completion_stage() throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            ObservationThreadLocalHolder.setValue("hello");
+            ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true);
+            List<String> values = new CopyOnWriteArrayList<>();
+
+            CompletableFuture<String> future = new CompletableFuture<>();
+            CompletionStage<String> stage = snapshot.instrumentCompletionStage(future)
+                    .thenApplyAsync(s -> s + ":" + ObservationThreadLocalHolder.getValue(), executorService)
+                    .thenCompose(s -> CompletableFuture.supplyAsync(() -> s, executorService))
+                    .thenCombineAsync(CompletableFuture.completedFuture("!"),
+                            (s1, s2) -> s1 + ":" + ObservationThreadLocalHolder.getValue() + s2, executorService)
+                    .whenComplete((s, ex) -> values.add(ObservationThreadLocalHolder.getValue()))
+                    .handleAsync((s, ex) -> s + ":" + ObservationThreadLocalHolder.getValue());
+
+            ObservationThreadLocalHolder.reset();
+            executorService.submit(() -> future.complete("start"));
+
+            then(stage.toCompletableFuture().get(5, TimeUnit.SECONDS)).isEqualTo("start:hello:hello!:hello");
+            then(values).containsExactly("hello");
+
+            CompletableFuture<String> failingFuture = new CompletableFuture<>();
+            CompletionStage<String> failed = snapshot.instrumentCompletionStage(failingFuture)
+                    .exceptionally(ex -> ObservationThreadLocalHolder.getValue());
+            failingFuture.completeExceptionally(new IllegalStateException());
+
+            then(failed.toCompletableFuture().get(5, TimeUnit.SECONDS)).isEqualTo("hello");
+            then(ObservationThreadLocalHolder.getValue()).isNull();
+        }
+        finally {
+            executorService.shutdown();
+        }
+    }
+
     private void runInNewThread(Runnable runnable) throws InterruptedException {
         Thread thread = new Thread(runnable);
         thread.start();
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.BDDAssertions.then;
+
+/**
+ * Unit tests for {@link LazyContextSnapshot}.
+ */
+public class LazyContextSnapshotTests {
+
+    private final ContextRegistry registry = new ContextRegistry();
+
+    private final AtomicInteger readCount = new AtomicInteger();
+
+
+    @Test
+    void should_read_context_values_only_when_used() {
+        ThreadLocal<String> fooThreadLocal = new ThreadLocal<>();
+        ThreadLocal<String> barThreadLocal = new ThreadLocal<>();
+
+        this.registry
+                .registerContextAccessor(new CountingContextAccessor())
+                .registerThreadLocalAccessor(new TestThreadLocalAccessor("foo", fooThreadLocal))
+                .registerThreadLocalAccessor(new TestThreadLocalAccessor("bar", barThreadLocal));
+
+        Map<String, String> sourceContext = new HashMap<>();
+        sourceContext.put("bar", "barValue");
+
+        fooThreadLocal.set("fooValue");
+        ContextSnapshot snapshot = ContextSnapshot.captureLazily(this.registry, key -> true, sourceContext);
+        fooThreadLocal.remove();
+
+        then(this.readCount.get()).isEqualTo(0);
+
+        try (ContextSnapshot.Scope scope = snapshot.setThreadLocalValues()) {
+            then(fooThreadLocal.get()).isEqualTo("fooValue");
+            then(barThreadLocal.get()).isEqualTo("barValue");
+        }
+        then(fooThreadLocal.get()).isNull();
+        then(barThreadLocal.get()).isNull();
+
+        Map<Object, Object> targetContext = snapshot.updateContext(new HashMap<>());
+        then(targetContext).containsEntry("foo", "fooValue");
+        then(targetContext).containsEntry("bar", "barValue");
+
+        then(this.readCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    void should_report_capture_when_created() {
+        ThreadLocal<String> fooThreadLocal = new ThreadLocal<>();
+        ContextPropagationRecorder recorder = new ContextPropagationRecorder();
+
+        this.registry
+                .registerContextAccessor(new CountingContextAccessor())
+                .registerThreadLocalAccessor(new TestThreadLocalAccessor("foo", fooThreadLocal))
+                .registerThreadLocalAccessor(new TestThreadLocalAccessor("bar", new ThreadLocal<>()))
+                .setPropagationListener(recorder);
+
+        Map<String, String> sourceContext = new HashMap<>();
+        sourceContext.put("bar", "barValue");
+
+        fooThreadLocal.set("fooValue");
+        ContextSnapshot snapshot = ContextSnapshot.captureLazily(this.registry, key -> true, sourceContext);
+        fooThreadLocal.remove();
+
+        then(recorder.getCaptureCount()).isEqualTo(1);
+        then(recorder.getCapturedValueCount()).isEqualTo(1);
+
+        snapshot.updateContext(new HashMap<>());
+
+        then(this.readCount.get()).isEqualTo(1);
+        then(recorder.getCaptureCount()).isEqualTo(1);
+    }
+
+    @Test
+    void should_not_see_changes_to_contexts_array_after_capture() {
+        this.registry
+                .registerContextAccessor(new CountingContextAccessor())
+                .registerThreadLocalAccessor(new TestThreadLocalAccessor("foo", new ThreadLocal<>()));
+
+        Map<String, String> sourceContext = new HashMap<>();
+        sourceContext.put("foo", "fooValue");
+        Map<String, String> otherContext = new HashMap<>();
+        otherContext.put("foo", "otherValue");
+
+        Object[] contexts = new Object[] { sourceContext };
+        ContextSnapshot snapshot = ContextSnapshot.captureLazily(this.registry, key -> true, contexts);
+        contexts[0] = otherContext;
+
+        Map<Object, Object> targetContext = snapshot.updateContext(new HashMap<>());
+        then(targetContext).containsEntry("foo", "fooValue");
+    }
+
+    @Test
+    void should_fail_on_capture_if_context_cannot_be_read() {
+        assertThatThrownBy(() -> ContextSnapshot.captureLazily(this.registry, key -> true, new HashMap<>()))
+                .isInstanceOf(IllegalStateException.class);
+    }
+
+
+    private class CountingContextAccessor extends TestContextAccessor {
+
+        @Override
+        public void readValues(Map<?, ?> sourceContext, Predicate<Object> keyPredicate, Map<Object, Object> readValues) {
+            readCount.incrementAndGet();
+            super.readValues(sourceContext, keyPredicate, readValues);
+        }
+
+    }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+/**
+ * Unit tests for {@link ReactorContextAccessor}.
+ */
+public class ReactorContextAccessorTests {
+
+    private final ReactorContextAccessor accessor = new ReactorContextAccessor();
+
+
+    @Test
+    void should_read_selected_values() {
+        Context context = Context.of("foo", "fooValue", "bar", "barValue");
+
+        Map<Object, Object> values = new HashMap<>();
+        this.accessor.readValues(context, key -> key.equals("foo"), values);
+
+        then(values).containsOnlyKeys("foo").containsEntry("foo", "fooValue");
+    }
+
+    @Test
+    void should_read_selected_values_from_large_context() {
+        Context context = Context.empty();
+        for (int i = 0; i < 10; i++) {
+            context = context.put("key" + i, "value" + i);
+        }
+
+        Map<Object, Object> values = new HashMap<>();
+        this.accessor.readValues(context, key -> !key.equals("key5"), values);
+
+        then(values).hasSize(9).containsEntry("key0", "value0").containsEntry("key9", "value9");
+    }
+
+    @Test
+    void should_read_large_context_as_map() {
+        // readValues iterates a large Context as a Map rather than through a Stream
+        Context context = Context.of("key0", "value0", "key1", "value1", "key2", "value2", "key3", "value3",
+                "key4", "value4").put("key5", "value5");
+
+        then(context).isInstanceOf(Map.class);
+    }
+
+    @Test
+    void should_read_values_for_keys_without_iterating() {
+        Context context = Context.empty();
+        for (int i = 0; i < 10; i++) {
+            context = context.put("key" + i, "value" + i);
+        }
+        Set<Object> keys = new HashSet<>(Arrays.asList("key1", "key5", "other"));
+
+        Map<Object, Object> values = new HashMap<>();
+        this.accessor.readValues(new NonIterableContextView(context), keys, values);
+
+        then(values).containsOnlyKeys("key1", "key5").containsEntry("key5", "value5");
+    }
+
+    @Test
+    void should_read_values_for_keys_from_small_context() {
+        Context context = Context.of("foo", "fooValue", "bar", "barValue");
+        Set<Object> keys = new HashSet<>(Arrays.asList("foo", "baz", "qux"));
+
+        Map<Object, Object> values = new HashMap<>();
+        this.accessor.readValues(context, keys, values);
+
+        then(values).containsOnlyKeys("foo");
+    }
+
+    @Test
+    void should_write_values_to_empty_context() {
+        Context context = this.accessor.writeValues(valuesOfSize(3), Context.empty());
+
+        then(context.size()).isEqualTo(3);
+        then(context.<String>get("key2")).isEqualTo("value2");
+    }
+
+    @Test
+    void should_write_values_to_small_context() {
+        Context context = this.accessor.writeValues(valuesOfSize(2), Context.of("foo", "fooValue", "key1", "old"));
+
+        then(context.size()).isEqualTo(3);
+        then(context.<String>get("foo")).isEqualTo("fooValue");
+        then(context.<String>get("key1")).isEqualTo("value1");
+    }
+
+    @Test
+    void should_write_values_to_large_context() {
+        Context context = this.accessor.writeValues(valuesOfSize(8), Context.of("foo", "fooValue", "key1", "old"));
+
+        then(context.size()).isEqualTo(9);
+        then(context.<String>get("foo")).isEqualTo("fooValue");
+        then(context.<String>get("key1")).isEqualTo("value1");
+        then(context.<String>get("key7")).isEqualTo("value7");
+    }
+
+    @Test
+    void should_write_values_to_small_context_beyond_chained_put_size() {
+        Context context = this.accessor.writeValues(valuesOfSize(4), Context.of("foo", "fooValue", "key1", "old"));
+
+        then(context.size()).isEqualTo(5);
+        then(context.<String>get("foo")).isEqualTo("fooValue");
+        then(context.<String>get("key1")).isEqualTo("value1");
+        then(context.<String>get("key3")).isEqualTo("value3");
+    }
+
+    @Test
+    void should_return_same_context_when_no_values() {
+        Context context = Context.of("foo", "fooValue");
+        then(this.accessor.writeValues(new HashMap<>(), context)).isSameAs(context);
+    }
+
+    private static Map<Object, Object> valuesOfSize(int size) {
+        Map<Object, Object> values = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            values.put("key" + i, "value" + i);
+        }
+        return values;
+    }
+
+
+    /**
+     * ContextView that fails when iterated, to check that keys are looked up.
+     */
+    private static class NonIterableContextView implements ContextView {
+
+        private final ContextView delegate;
+
+        NonIterableContextView(ContextView delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public <T> T get(Object key) {
+            return this.delegate.get(key);
+        }
+
+        @Override
+        public boolean hasKey(Object key) {
+            return this.delegate.hasKey(key);
+        }
+
+        @Override
+        public int size() {
+            return this.delegate.size();
+        }
+
+        @Override
+        public Stream<Map.Entry<Object, Object>> stream() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
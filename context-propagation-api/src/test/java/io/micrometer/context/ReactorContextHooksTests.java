@@ -0,0 +1,175 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+/**
+ * Unit tests for {@link ReactorContextHooks}.
+ */
+public class ReactorContextHooksTests {
+
+    private final ContextRegistry registry = new ContextRegistry();
+
+    private final ThreadLocal<String> fooThreadLocal = new ThreadLocal<>();
+
+    private final List<String> observedValues = new ArrayList<>();
+
+
+    @BeforeEach
+    void setUp() {
+        this.registry.registerContextAccessor(new ReactorContextAccessor());
+        this.registry.registerThreadLocalAccessor(new TestThreadLocalAccessor("foo", this.fooThreadLocal));
+        ReactorContextHooks.enable(this.registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ReactorContextHooks.disable();
+        ReactorContextHooks.disableScheduleHook();
+        this.fooThreadLocal.remove();
+    }
+
+
+    @Test
+    void should_set_thread_local_values_from_context_around_signals() {
+        Flux.just("a", "b")
+                .doOnNext(value -> this.observedValues.add(value + "=" + this.fooThreadLocal.get()))
+                .map(value -> value + "=" + this.fooThreadLocal.get())
+                .doOnNext(this.observedValues::add)
+                .contextWrite(Context.of("foo", "fooValue"))
+                .blockLast();
+
+        then(this.observedValues).containsExactly("a=fooValue", "a=fooValue", "b=fooValue", "b=fooValue");
+        then(this.fooThreadLocal.get()).isNull();
+    }
+
+    @Test
+    void should_restore_previous_thread_local_value() {
+        this.fooThreadLocal.set("previousValue");
+
+        Flux.just("a")
+                .doOnNext(value -> this.observedValues.add(this.fooThreadLocal.get()))
+                .contextWrite(Context.of("foo", "fooValue"))
+                .blockLast();
+
+        then(this.observedValues).containsExactly("fooValue");
+        then(this.fooThreadLocal.get()).isEqualTo("previousValue");
+    }
+
+    @Test
+    void should_not_change_thread_local_values_without_context_values() {
+        this.fooThreadLocal.set("previousValue");
+
+        Flux.just("a")
+                .doOnNext(value -> this.observedValues.add(this.fooThreadLocal.get()))
+                .contextWrite(Context.of("bar", "barValue"))
+                .blockLast();
+
+        then(this.observedValues).containsExactly("previousValue");
+    }
+
+    @Test
+    void should_not_set_thread_local_values_when_disabled() {
+        ReactorContextHooks.disable();
+
+        Flux.just("a")
+                .doOnNext(value -> this.observedValues.add(this.fooThreadLocal.get()))
+                .contextWrite(Context.of("foo", "fooValue"))
+                .blockLast();
+
+        then(this.observedValues).hasSize(1);
+        then(this.observedValues.get(0)).isNull();
+    }
+
+    @Test
+    void should_not_decorate_subscribers_without_context_accessor() {
+        ContextRegistry registry = new ContextRegistry();
+        registry.registerThreadLocalAccessor(new TestThreadLocalAccessor("foo", this.fooThreadLocal));
+        ReactorContextHooks.enable(registry);
+
+        Flux.just("a")
+                .doOnNext(value -> this.observedValues.add(String.valueOf(this.fooThreadLocal.get())))
+                .contextWrite(Context.of("foo", "fooValue"))
+                .blockLast();
+
+        then(this.observedValues).containsExactly("null");
+    }
+
+    @Test
+    void should_write_thread_local_values_to_context_once_per_subscription() {
+        List<Context> contexts = new ArrayList<>();
+        Flux<String> flux = Flux.just("a")
+                .contextWrite(context -> {
+                    contexts.add(context);
+                    return context;
+                })
+                .contextWrite(ReactorContextHooks.captureThreadLocalValues(this.registry));
+
+        this.fooThreadLocal.set("fooValue");
+        flux.blockLast();
+        this.fooThreadLocal.set("otherValue");
+        flux.blockLast();
+
+        then(contexts).hasSize(2);
+        then(contexts.get(0).<String>get("foo")).isEqualTo("fooValue");
+        then(contexts.get(1).<String>get("foo")).isEqualTo("otherValue");
+    }
+
+    @Test
+    void should_return_same_context_without_thread_local_values() {
+        Context context = Context.of("bar", "barValue");
+        then(ReactorContextHooks.captureThreadLocalValues(this.registry).apply(context)).isSameAs(context);
+    }
+
+    @Test
+    void should_set_thread_local_values_on_scheduler_thread() {
+        ReactorContextHooks.enableScheduleHook(this.registry);
+        Scheduler scheduler = Schedulers.newSingle("test");
+        try {
+            this.fooThreadLocal.set("fooValue");
+            Flux.just("a", "b")
+                    .publishOn(scheduler)
+                    .doOnNext(value -> this.observedValues.add(
+                            Thread.currentThread().getName() + ":" + this.fooThreadLocal.get()))
+                    .blockLast();
+        }
+        finally {
+            scheduler.dispose();
+        }
+
+        then(this.observedValues).containsExactly("test-1:fooValue", "test-1:fooValue");
+    }
+
+    @Test
+    void should_not_decorate_task_without_thread_local_values() {
+        ReactorContextHooks.enableScheduleHook(this.registry);
+        Runnable task = () -> { };
+        then(Schedulers.onSchedule(task)).isSameAs(task);
+    }
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+/**
+ * Unit tests for {@link ScopeLeakDetector}.
+ */
+public class ScopeLeakDetectorTests {
+
+    private final ThreadLocal<String> fooThreadLocal = new ThreadLocal<>();
+
+    private final ThreadLocal<String> barThreadLocal = new ThreadLocal<>();
+
+    private final List<ScopeLeakDetector.Leak> leaks = Collections.synchronizedList(new ArrayList<>());
+
+    private final ContextRegistry registry = new ContextRegistry()
+            .registerThreadLocalAccessor(new TestThreadLocalAccessor("foo", this.fooThreadLocal))
+            .registerThreadLocalAccessor(new TestThreadLocalAccessor("bar", this.barThreadLocal));
+
+
+    @AfterEach
+    void clear() {
+        this.fooThreadLocal.remove();
+        this.barThreadLocal.remove();
+    }
+
+
+    @Test
+    void should_not_keep_detector_that_does_nothing() {
+        this.registry.setScopeLeakDetector(new ScopeLeakDetector(0, this.leaks::add));
+        then(this.registry.getScopeLeakDetector()).isNull();
+
+        ScopeLeakDetector detector = new ScopeLeakDetector(0, true, this.leaks::add);
+        this.registry.setScopeLeakDetector(detector);
+        then(this.registry.getScopeLeakDetector()).isSameAs(detector);
+    }
+
+    @Test
+    void should_not_report_closed_scope() {
+        this.registry.setScopeLeakDetector(new ScopeLeakDetector(1, this.leaks::add));
+        this.fooThreadLocal.set("fooValue");
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true);
+        this.fooThreadLocal.remove();
+
+        try (ContextSnapshot.Scope scope = snapshot.setThreadLocalValues()) {
+            then(this.fooThreadLocal.get()).isEqualTo("fooValue");
+        }
+
+        then(this.fooThreadLocal.get()).isNull();
+        then(this.leaks).isEmpty();
+    }
+
+    @Test
+    void should_report_scope_closed_on_different_thread() throws Exception {
+        this.registry.setScopeLeakDetector(new ScopeLeakDetector(1, this.leaks::add));
+        this.fooThreadLocal.set("fooValue");
+        this.barThreadLocal.set("barValue");
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true);
+        this.fooThreadLocal.remove();
+        this.barThreadLocal.remove();
+
+        ContextSnapshot.Scope scope = snapshot.setThreadLocalValues();
+        Thread thread = new Thread(scope::close, "closing-thread");
+        thread.start();
+        thread.join();
+
+        then(this.leaks).hasSize(1);
+        ScopeLeakDetector.Leak leak = this.leaks.get(0);
+        then(leak.getType()).isEqualTo(ScopeLeakDetector.LeakType.CLOSED_ON_DIFFERENT_THREAD);
+        then(leak.getKeys()).containsExactly("foo", "bar");
+        then(leak.getThreadName()).isEqualTo(Thread.currentThread().getName());
+        then(leak.getClosingThreadName()).isEqualTo("closing-thread");
+        then(leak.getAllocationSite()).isNotNull();
+    }
+
+    @Test
+    void should_report_unclosed_scope() throws Exception {
+        ScopeLeakDetector detector = new ScopeLeakDetector(1, this.leaks::add);
+        this.registry.setScopeLeakDetector(detector);
+        this.fooThreadLocal.set("fooValue");
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true);
+        this.fooThreadLocal.remove();
+
+        openScope(snapshot);
+        this.fooThreadLocal.remove();
+
+        for (int i = 0; i < 50 && this.leaks.isEmpty(); i++) {
+            System.gc();
+            Thread.sleep(10);
+            detector.checkUnclosedScopes();
+        }
+
+        then(this.leaks).hasSize(1);
+        ScopeLeakDetector.Leak leak = this.leaks.get(0);
+        then(leak.getType()).isEqualTo(ScopeLeakDetector.LeakType.NOT_CLOSED);
+        then(leak.getKeys()).containsExactly("foo");
+        then(leak.getClosingThreadName()).isNull();
+        then(leak.getAllocationSite().getStackTrace()[0].getClassName()).startsWith("io.micrometer.context.");
+    }
+
+    private static void openScope(ContextSnapshot snapshot) {
+        snapshot.setThreadLocalValues();
+    }
+
+    @Test
+    void should_report_values_not_restored_after_executor_task() throws Exception {
+        this.registry.setScopeLeakDetector(new ScopeLeakDetector(0, true, this.leaks::add));
+        this.fooThreadLocal.set("fooValue");
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true);
+        ExecutorService executor = snapshot.instrumentExecutorService(Executors.newSingleThreadExecutor());
+        try {
+            executor.submit(() -> this.fooThreadLocal.set("otherValue")).get();
+            then(this.leaks).isEmpty();
+
+            executor.submit(() -> this.barThreadLocal.set("barValue")).get();
+            then(this.leaks).hasSize(1);
+            ScopeLeakDetector.Leak leak = this.leaks.get(0);
+            then(leak.getType()).isEqualTo(ScopeLeakDetector.LeakType.NOT_RESTORED);
+            then(leak.getKeys()).containsExactly("bar");
+            then(leak.getClosingThreadName()).isNull();
+            then(leak.getAllocationSite()).isNull();
+
+            executor.submit(() -> this.barThreadLocal.remove()).get();
+            then(this.leaks).hasSize(2);
+            then(this.leaks.get(1).getKeys()).containsExactly("bar");
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void should_report_values_not_restored_after_executor_task_with_empty_snapshot() throws Exception {
+        this.registry.setScopeLeakDetector(new ScopeLeakDetector(0, true, this.leaks::add));
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true);
+        ExecutorService executor = snapshot.instrumentExecutorService(Executors.newSingleThreadExecutor());
+        try {
+            executor.submit(() -> this.fooThreadLocal.set("fooValue")).get();
+            then(this.leaks).hasSize(1);
+            then(this.leaks.get(0).getKeys()).containsExactly("foo");
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void should_report_values_not_restored_after_capturer_executor_task_with_no_values() throws Exception {
+        this.registry.setScopeLeakDetector(new ScopeLeakDetector(0, true, this.leaks::add));
+        ContextCapturer capturer = ContextCapturer.create(this.registry, key -> true);
+        ExecutorService executor = capturer.instrumentExecutorService(Executors.newSingleThreadExecutor());
+        try {
+            executor.submit(() -> this.barThreadLocal.set("barValue")).get();
+            then(this.leaks).hasSize(1);
+            then(this.leaks.get(0).getKeys()).containsExactly("bar");
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
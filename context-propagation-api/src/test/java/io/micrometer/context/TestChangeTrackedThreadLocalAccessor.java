@@ -0,0 +1,56 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link ChangeTrackedThreadLocalAccessor} for testing purposes that counts
+ * reads of the value.
+ */
+class TestChangeTrackedThreadLocalAccessor extends TestThreadLocalAccessor
+        implements ChangeTrackedThreadLocalAccessor<String> {
+
+    private final AtomicInteger readCount = new AtomicInteger();
+
+    TestChangeTrackedThreadLocalAccessor(String key, ThreadLocal<String> threadLocal) {
+        super(key, threadLocal);
+    }
+
+    int getReadCount() {
+        return this.readCount.get();
+    }
+
+    @Nullable
+    @Override
+    public String getValue() {
+        this.readCount.incrementAndGet();
+        return super.getValue();
+    }
+
+    @Override
+    public void setValue(String value) {
+        super.setValue(value);
+        ChangeTrackedThreadLocalAccessor.valueChanged();
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        ChangeTrackedThreadLocalAccessor.valueChanged();
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * GroupedThreadLocalAccessor for testing purposes, which keeps the values for
+ * the given keys in a {@link Map} in a {@link ThreadLocal}, and records the
+ * calls made to it.
+ */
+class TestGroupedThreadLocalAccessor implements GroupedThreadLocalAccessor {
+
+    private final List<Object> keys;
+
+    private final ThreadLocal<Map<Object, Object>> threadLocal = ThreadLocal.withInitial(HashMap::new);
+
+    private final List<String> calls = new ArrayList<>();
+
+    TestGroupedThreadLocalAccessor(Object... keys) {
+        this.keys = Arrays.asList(keys);
+    }
+
+    @Override
+    public List<Object> keys() {
+        return this.keys;
+    }
+
+    @Override
+    public void getValues(Object[] values) {
+        this.calls.add("get");
+        for (int i = 0; i < this.keys.size(); i++) {
+            values[i] = getValue(this.keys.get(i));
+        }
+    }
+
+    @Override
+    public void setValues(Object[] values) {
+        this.calls.add("set " + Arrays.toString(values));
+        for (int i = 0; i < this.keys.size(); i++) {
+            setValue(this.keys.get(i), values[i]);
+        }
+    }
+
+    @Override
+    public void reset() {
+        this.calls.add("reset");
+        this.threadLocal.remove();
+    }
+
+    @Nullable
+    Object getValue(Object key) {
+        return this.threadLocal.get().get(key);
+    }
+
+    void setValue(Object key, @Nullable Object value) {
+        if (value != null) {
+            this.threadLocal.get().put(key, value);
+        }
+        else {
+            this.threadLocal.get().remove(key);
+        }
+    }
+
+    List<String> getCalls() {
+        return this.calls;
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+/**
+ * Unit tests for {@link ContextEvents}.
+ */
+public class ContextEventsTests {
+
+    private static final String CAPTURE = "io.micrometer.context.ContextCapture";
+
+    private static final String SET_THREAD_LOCAL_VALUES = "io.micrometer.context.SetThreadLocalValues";
+
+    private static final String SCOPE = "io.micrometer.context.ContextScope";
+
+    private final ContextRegistry registry = new ContextRegistry();
+
+    private final ThreadLocal<String> fooThreadLocal = new ThreadLocal<>();
+
+    private final ThreadLocal<String> barThreadLocal = new ThreadLocal<>();
+
+
+    @AfterEach
+    void clear() {
+        this.fooThreadLocal.remove();
+        this.barThreadLocal.remove();
+    }
+
+
+    @Test
+    void should_be_disabled_by_default() {
+        FlightRecorder.register(ContextCaptureEvent.class);
+        FlightRecorder.register(SetThreadLocalValuesEvent.class);
+        FlightRecorder.register(ContextScopeEvent.class);
+
+        List<EventType> eventTypes = FlightRecorder.getFlightRecorder().getEventTypes().stream()
+                .filter(eventType -> eventType.getName().startsWith("io.micrometer.context."))
+                .collect(Collectors.toList());
+
+        then(eventTypes).hasSize(3);
+        eventTypes.forEach(eventType -> then(eventType.isEnabled()).isFalse());
+        then(ContextEvents.beginCapture()).isNull();
+        then(ContextEvents.beginSetThreadLocalValues()).isNull();
+        then(ContextEvents.beginScope()).isNull();
+    }
+
+    @Test
+    void should_record_capture_set_and_scope() throws Exception {
+        this.registry.registerThreadLocalAccessor(new TestThreadLocalAccessor("foo", this.fooThreadLocal));
+        this.registry.registerThreadLocalAccessor(new TestThreadLocalAccessor("bar", this.barThreadLocal));
+        this.fooThreadLocal.set("fooValue");
+        this.barThreadLocal.set("barValue");
+
+        List<RecordedEvent> events;
+        try (Recording recording = startRecording()) {
+            ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> key.equals("foo"));
+            this.fooThreadLocal.remove();
+            try (ContextSnapshot.Scope scope = snapshot.setThreadLocalValues()) {
+                then(this.fooThreadLocal.get()).isEqualTo("fooValue");
+            }
+            events = stopRecording(recording);
+        }
+
+        then(eventNames(events)).containsExactly(CAPTURE, SET_THREAD_LOCAL_VALUES, SCOPE);
+
+        RecordedEvent capture = events.get(0);
+        then(capture.getInt("snapshotSize")).isEqualTo(1);
+        then(capture.getInt("accessorCount")).isEqualTo(2);
+        then(capture.getInt("registryVersion")).isEqualTo(this.registry.getVersion());
+
+        RecordedEvent set = events.get(1);
+        then(set.getInt("snapshotSize")).isEqualTo(1);
+        then(set.getInt("accessorCount")).isEqualTo(1);
+        then(set.getInt("registryVersion")).isEqualTo(this.registry.getVersion());
+
+        then(events.get(2).getInt("accessorCount")).isEqualTo(1);
+    }
+
+    @Test
+    void should_record_accessors_touched_in_scope() throws Exception {
+        this.registry.registerThreadLocalAccessor(new TestThreadLocalAccessor("foo", this.fooThreadLocal));
+        this.registry.registerThreadLocalAccessor(new TestThreadLocalAccessor("bar", this.barThreadLocal));
+        this.fooThreadLocal.set("fooValue");
+        this.barThreadLocal.set("barValue");
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true);
+        this.barThreadLocal.remove();
+
+        List<RecordedEvent> events;
+        try (Recording recording = startRecording()) {
+            snapshot.setThreadLocalValues().close();
+            events = stopRecording(recording);
+        }
+
+        // foo already has the same value, and is neither set nor restored
+        then(eventNames(events)).containsExactly(SET_THREAD_LOCAL_VALUES, SCOPE);
+        then(events.get(0).getInt("snapshotSize")).isEqualTo(2);
+        then(events.get(0).getInt("accessorCount")).isEqualTo(1);
+        then(events.get(1).getInt("accessorCount")).isEqualTo(1);
+    }
+
+    @Test
+    void should_not_record_scope_when_no_values_are_set() throws Exception {
+        this.registry.registerThreadLocalAccessor(new TestThreadLocalAccessor("foo", this.fooThreadLocal));
+        this.fooThreadLocal.set("fooValue");
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true);
+
+        List<RecordedEvent> events;
+        try (Recording recording = startRecording()) {
+            snapshot.setThreadLocalValues().close();
+            events = stopRecording(recording);
+        }
+
+        then(eventNames(events)).containsExactly(SET_THREAD_LOCAL_VALUES);
+        then(events.get(0).getInt("accessorCount")).isEqualTo(0);
+    }
+
+    private static Recording startRecording() {
+        Recording recording = new Recording();
+        recording.enable(CAPTURE).withoutThreshold();
+        recording.enable(SET_THREAD_LOCAL_VALUES).withoutThreshold();
+        recording.enable(SCOPE).withoutThreshold();
+        recording.start();
+        return recording;
+    }
+
+    private static List<RecordedEvent> stopRecording(Recording recording) throws Exception {
+        recording.stop();
+        Path file = Files.createTempFile("context-events", ".jfr");
+        try {
+            recording.dump(file);
+            return RecordingFile.readAllEvents(file).stream()
+                    .filter(event -> event.getEventType().getName().startsWith("io.micrometer.context."))
+                    .filter(event -> event.getThread().getJavaThreadId() == Thread.currentThread().getId())
+                    .sorted((e1, e2) -> e1.getStartTime().compareTo(e2.getStartTime()))
+                    .collect(Collectors.toList());
+        }
+        finally {
+            Files.delete(file);
+        }
+    }
+
+    private static List<String> eventNames(List<RecordedEvent> events) {
+        return events.stream().map(event -> event.getEventType().getName()).collect(Collectors.toList());
+    }
+
+}
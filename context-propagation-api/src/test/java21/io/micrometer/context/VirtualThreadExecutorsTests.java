@@ -0,0 +1,120 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+/**
+ * Unit tests for {@link VirtualThreadExecutors}.
+ */
+public class VirtualThreadExecutorsTests {
+
+    private final ContextRegistry registry = new ContextRegistry();
+
+    private final ThreadLocal<String> fooThreadLocal = new ThreadLocal<>();
+
+    private final List<String> accessorCalls = Collections.synchronizedList(new ArrayList<>());
+
+
+    @AfterEach
+    void clear() {
+        this.fooThreadLocal.remove();
+    }
+
+
+    @Test
+    void should_set_thread_local_values_on_virtual_thread() throws Exception {
+        this.registry.registerThreadLocalAccessor(new TestThreadLocalAccessor("foo", this.fooThreadLocal));
+        this.fooThreadLocal.set("fooValue");
+
+        try (ExecutorService executor = VirtualThreadExecutors.newVirtualThreadPerTaskExecutor(this.registry)) {
+            Future<String> future = executor.submit(
+                    () -> Thread.currentThread().isVirtual() + ":" + this.fooThreadLocal.get());
+            then(future.get()).isEqualTo("true:fooValue");
+        }
+    }
+
+    @Test
+    void should_set_values_without_reading_or_restoring() throws Exception {
+        this.registry.registerThreadLocalAccessor(new RecordingThreadLocalAccessor("foo", this.fooThreadLocal));
+        this.fooThreadLocal.set("fooValue");
+        this.accessorCalls.clear();
+
+        try (ExecutorService executor = VirtualThreadExecutors.newVirtualThreadPerTaskExecutor(this.registry)) {
+            executor.submit(() -> this.accessorCalls.add("task")).get();
+        }
+
+        then(this.accessorCalls).containsExactly("get on submit", "set", "task");
+    }
+
+    @Test
+    void should_capture_values_on_each_submit() throws Exception {
+        this.registry.registerThreadLocalAccessor(new TestThreadLocalAccessor("foo", this.fooThreadLocal));
+
+        try (ExecutorService executor = VirtualThreadExecutors.newThreadPerTaskExecutor(
+                this.registry, Thread.ofVirtual().name("task-", 0).factory())) {
+
+            Future<String> future1 = executor.submit(this.fooThreadLocal::get);
+            this.fooThreadLocal.set("fooValue");
+            Future<String> future2 =
+                    executor.submit(() -> Thread.currentThread().getName() + ":" + this.fooThreadLocal.get());
+
+            then(future1.get()).isNull();
+            then(future2.get()).isEqualTo("task-1:fooValue");
+        }
+    }
+
+    @Test
+    void should_be_supported() {
+        then(VirtualThreadExecutors.isSupported()).isTrue();
+    }
+
+
+    private class RecordingThreadLocalAccessor extends TestThreadLocalAccessor {
+
+        RecordingThreadLocalAccessor(String key, ThreadLocal<String> threadLocal) {
+            super(key, threadLocal);
+        }
+
+        @Override
+        public String getValue() {
+            accessorCalls.add(Thread.currentThread().isVirtual() ? "get" : "get on submit");
+            return super.getValue();
+        }
+
+        @Override
+        public void setValue(String value) {
+            accessorCalls.add("set");
+            super.setValue(value);
+        }
+
+        @Override
+        public void reset() {
+            accessorCalls.add("reset");
+            super.reset();
+        }
+    }
+
+}
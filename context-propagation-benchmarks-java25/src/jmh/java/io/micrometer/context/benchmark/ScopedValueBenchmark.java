@@ -0,0 +1,138 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context.benchmark;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.context.ContextSnapshot;
+import io.micrometer.context.VirtualThreadExecutors;
+import io.micrometer.context.scopedvalue.ScopedValueAccessor;
+import io.micrometer.context.scopedvalue.ScopedValueBinder;
+import io.micrometer.context.scopedvalue.ScopedValueContextAccessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for propagating snapshot values to a high number of tasks, each
+ * on its own virtual thread, through ThreadLocal's or through
+ * {@link ScopedValueBinder}.
+ *
+ * <p>{@code snapshotSize} is the number of values to propagate, and
+ * {@code fanOut} the number of tasks. Scoped values are bound on each task
+ * thread here, as inheritance by threads forked in a
+ * {@code StructuredTaskScope}, which would avoid even that, requires preview
+ * features.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ScopedValueBenchmark {
+
+    @Param({"1", "4", "16"})
+    int snapshotSize;
+
+    @Param({"16", "256", "4096"})
+    int fanOut;
+
+    private ThreadLocalAccessorFixture fixture;
+
+    private ContextSnapshot snapshot;
+
+    private ScopedValueBinder binder;
+
+    private ExecutorService executorService;
+
+    private ExecutorService contextExecutorService;
+
+    private final Runnable task = () -> { };
+
+
+    @Setup
+    public void setup() {
+        this.fixture = new ThreadLocalAccessorFixture(this.snapshotSize);
+        this.fixture.setValues(this.snapshotSize);
+        this.fixture.getRegistry().registerContextAccessor(new ScopedValueContextAccessor());
+        this.snapshot = ContextSnapshot.capture(this.fixture.getRegistry(), key -> true);
+
+        ScopedValueAccessor<?>[] accessors = new ScopedValueAccessor<?>[this.snapshotSize];
+        for (int i = 0; i < this.snapshotSize; i++) {
+            accessors[i] = ScopedValueAccessor.of(ThreadLocalAccessorFixture.key(i), ScopedValue.newInstance());
+        }
+        this.binder = ScopedValueBinder.of(accessors);
+
+        this.executorService = Executors.newVirtualThreadPerTaskExecutor();
+        this.contextExecutorService = VirtualThreadExecutors.newVirtualThreadPerTaskExecutor(this.fixture.getRegistry());
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.executorService.close();
+        this.contextExecutorService.close();
+        this.fixture.resetValues();
+    }
+
+
+    @Benchmark
+    public void threadLocals() throws ExecutionException, InterruptedException {
+        Future<?>[] futures = new Future<?>[this.fanOut];
+        for (int i = 0; i < this.fanOut; i++) {
+            futures[i] = this.executorService.submit(this.snapshot.instrumentRunnable(this.task));
+        }
+        await(futures);
+    }
+
+    @Benchmark
+    public void threadLocalsSetOnThreadStart() throws ExecutionException, InterruptedException {
+        Future<?>[] futures = new Future<?>[this.fanOut];
+        for (int i = 0; i < this.fanOut; i++) {
+            futures[i] = this.contextExecutorService.submit(this.task);
+        }
+        await(futures);
+    }
+
+    @Benchmark
+    public void scopedValues() throws ExecutionException, InterruptedException {
+        Future<?>[] futures = new Future<?>[this.fanOut];
+        for (int i = 0; i < this.fanOut; i++) {
+            futures[i] = this.executorService.submit(this.binder.wrap(this.snapshot, this.task));
+        }
+        await(futures);
+    }
+
+    private static void await(Future<?>[] futures) throws ExecutionException, InterruptedException {
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+
+}
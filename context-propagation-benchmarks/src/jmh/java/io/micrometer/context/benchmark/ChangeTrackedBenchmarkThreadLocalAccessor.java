@@ -0,0 +1,43 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context.benchmark;
+
+import io.micrometer.context.ChangeTrackedThreadLocalAccessor;
+
+/**
+ * {@link ChangeTrackedThreadLocalAccessor} for benchmarks with a given key and
+ * {@link ThreadLocal} instance.
+ */
+class ChangeTrackedBenchmarkThreadLocalAccessor extends BenchmarkThreadLocalAccessor
+        implements ChangeTrackedThreadLocalAccessor<Object> {
+
+    ChangeTrackedBenchmarkThreadLocalAccessor(String key, ThreadLocal<Object> threadLocal) {
+        super(key, threadLocal);
+    }
+
+    @Override
+    public void setValue(Object value) {
+        super.setValue(value);
+        ChangeTrackedThreadLocalAccessor.valueChanged();
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        ChangeTrackedThreadLocalAccessor.valueChanged();
+    }
+
+}
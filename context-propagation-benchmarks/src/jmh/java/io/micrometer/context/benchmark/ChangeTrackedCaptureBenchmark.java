@@ -0,0 +1,92 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import io.micrometer.context.ChangeTrackedThreadLocalAccessor;
+import io.micrometer.context.ContextCapturer;
+import io.micrometer.context.ContextSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Repeated captures on a thread whose values do not change in between, with
+ * and without {@link ChangeTrackedThreadLocalAccessor}'s, and a capture after
+ * a change, for the cost of a miss.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ChangeTrackedCaptureBenchmark {
+
+    private static final Predicate<Object> ALL_KEYS = key -> true;
+
+    @Param({"4", "16", "64"})
+    int accessorCount;
+
+    @Param({"false", "true"})
+    boolean changeTracked;
+
+    private ThreadLocalAccessorFixture fixture;
+
+    private ContextCapturer capturer;
+
+
+    @Setup
+    public void setup() {
+        this.fixture = new ThreadLocalAccessorFixture(this.accessorCount, this.changeTracked);
+        this.fixture.setValues(this.accessorCount);
+        this.capturer = ContextCapturer.create(this.fixture.getRegistry(), ALL_KEYS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.fixture.resetValues();
+    }
+
+
+    @Benchmark
+    public ContextSnapshot capture() {
+        return ContextSnapshot.capture(this.fixture.getRegistry(), ALL_KEYS);
+    }
+
+    @Benchmark
+    public ContextSnapshot captureWithCapturer() {
+        return this.capturer.capture();
+    }
+
+    @Benchmark
+    public ContextSnapshot captureAfterChange() {
+        ChangeTrackedThreadLocalAccessor.valueChanged();
+        return this.capturer.capture();
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context.benchmark;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.context.ContextRegistry;
+import io.micrometer.context.ContextSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to run a chain of 10 stages, asynchronously on a thread pool, and
+ * synchronously on the calling thread. Each chain runs without context,
+ * with a snapshot captured and applied separately for each stage, and
+ * through {@link ContextSnapshot#instrumentCompletionStage}, which captures
+ * once for the whole chain.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CompletionStageBenchmark {
+
+    private static final int STAGE_COUNT = 10;
+
+    @Param({"4"})
+    int accessorCount;
+
+    private ThreadLocalAccessorFixture fixture;
+
+    private ContextRegistry registry;
+
+    private ExecutorService executor;
+
+
+    @Setup
+    public void setup() {
+        this.fixture = new ThreadLocalAccessorFixture(this.accessorCount);
+        this.fixture.setValues(this.accessorCount);
+        this.registry = this.fixture.getRegistry();
+        this.executor = Executors.newFixedThreadPool(2);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.executor.shutdown();
+        this.fixture.resetValues();
+    }
+
+
+    @Benchmark
+    public Integer asyncPlain() {
+        CompletionStage<Integer> stage = CompletableFuture.completedFuture(0);
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            stage = stage.thenApplyAsync(value -> value + 1, this.executor);
+        }
+        return stage.toCompletableFuture().join();
+    }
+
+    @Benchmark
+    public Integer asyncCapturePerStage() {
+        CompletionStage<Integer> stage = CompletableFuture.completedFuture(0);
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true);
+            stage = stage.thenApplyAsync(snapshot.instrumentFunction(value -> value + 1), this.executor);
+        }
+        return stage.toCompletableFuture().join();
+    }
+
+    @Benchmark
+    public Integer asyncInstrumentedStage() {
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true);
+        CompletionStage<Integer> stage = snapshot.instrumentCompletionStage(CompletableFuture.completedFuture(0));
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            stage = stage.thenApplyAsync(value -> value + 1, this.executor);
+        }
+        return stage.toCompletableFuture().join();
+    }
+
+    @Benchmark
+    public Integer syncPlain() {
+        CompletionStage<Integer> stage = CompletableFuture.completedFuture(0);
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            stage = stage.thenApply(value -> value + 1);
+        }
+        return stage.toCompletableFuture().join();
+    }
+
+    @Benchmark
+    public Integer syncInstrumentedStage() {
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true);
+        CompletionStage<Integer> stage = snapshot.instrumentCompletionStage(CompletableFuture.completedFuture(0));
+        for (int i = 0; i < STAGE_COUNT; i++) {
+            stage = stage.thenApply(value -> value + 1);
+        }
+        return stage.toCompletableFuture().join();
+    }
+
+}
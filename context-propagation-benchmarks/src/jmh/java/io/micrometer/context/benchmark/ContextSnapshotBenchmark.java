@@ -0,0 +1,105 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.context.ContextCapturer;
+import io.micrometer.context.ContextSnapshot;
+import io.micrometer.context.ReactorContextAccessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+/**
+ * Benchmarks for capturing a {@link ContextSnapshot} from {@code ThreadLocal}
+ * values, on every call with a key predicate, or through a reusable
+ * {@link ContextCapturer}, and from a Reactor {@code Context} with
+ * {@code snapshotSize} entries, eagerly or lazily.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ContextSnapshotBenchmark {
+
+    @Param({"1", "4", "16", "64"})
+    int accessorCount;
+
+    @Param({"1", "4", "16", "64"})
+    int snapshotSize;
+
+    private ThreadLocalAccessorFixture fixture;
+
+    private ContextCapturer capturer;
+
+    private ContextView contextView;
+
+
+    @Setup
+    public void setup() {
+        this.fixture = new ThreadLocalAccessorFixture(this.accessorCount);
+        this.fixture.setValues(this.snapshotSize);
+        this.capturer = ContextCapturer.create(this.fixture.getRegistry(), key -> true);
+
+        this.fixture.getRegistry().registerContextAccessor(new ReactorContextAccessor());
+        Context context = Context.empty();
+        for (int i = 0; i < this.snapshotSize; i++) {
+            context = context.put("context" + i, "value" + i);
+        }
+        this.contextView = context;
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.fixture.resetValues();
+    }
+
+
+    @Benchmark
+    public ContextSnapshot capture() {
+        return ContextSnapshot.capture(this.fixture.getRegistry(), key -> true);
+    }
+
+    @Benchmark
+    public ContextSnapshot captureWithCapturer() {
+        return this.capturer.capture();
+    }
+
+    @Benchmark
+    public ContextSnapshot captureWithContext() {
+        return ContextSnapshot.capture(this.fixture.getRegistry(), key -> true, this.contextView);
+    }
+
+    @Benchmark
+    public ContextSnapshot captureLazilyWithContext() {
+        return ContextSnapshot.captureLazily(this.fixture.getRegistry(), key -> true, this.contextView);
+    }
+
+}
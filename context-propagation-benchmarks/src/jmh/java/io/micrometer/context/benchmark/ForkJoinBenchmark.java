@@ -0,0 +1,160 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context.benchmark;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.context.ContextRecursiveTask;
+import io.micrometer.context.ContextSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Time to run a binary fork/join tree of the given {@code depth}, without
+ * context, with a {@link ContextRecursiveTask}, and with a plain
+ * {@link RecursiveTask} that sets and restores snapshot values in every
+ * subtask.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ForkJoinBenchmark {
+
+    @Param({"4"})
+    int accessorCount;
+
+    @Param({"10", "16"})
+    int depth;
+
+    private ThreadLocalAccessorFixture fixture;
+
+    private ContextSnapshot snapshot;
+
+    private ForkJoinPool pool;
+
+
+    @Setup
+    public void setup() {
+        this.fixture = new ThreadLocalAccessorFixture(this.accessorCount);
+        this.fixture.setValues(this.accessorCount);
+        this.snapshot = ContextSnapshot.capture(this.fixture.getRegistry(), key -> true);
+        this.fixture.resetValues();
+        this.pool = new ForkJoinPool();
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.pool.shutdown();
+    }
+
+
+    @Benchmark
+    public Integer plainTask() {
+        return this.pool.invoke(new PlainTask(this.depth));
+    }
+
+    @Benchmark
+    public Integer contextRecursiveTask() {
+        return this.pool.invoke(new ContextTask(this.snapshot, this.depth));
+    }
+
+    @Benchmark
+    public Integer restoreInEveryTask() {
+        return this.pool.invoke(new RestoringTask(this.snapshot, this.depth));
+    }
+
+
+    private static class PlainTask extends RecursiveTask<Integer> {
+
+        private final int depth;
+
+        PlainTask(int depth) {
+            this.depth = depth;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (this.depth == 0) {
+                return 1;
+            }
+            PlainTask left = new PlainTask(this.depth - 1);
+            left.fork();
+            return new PlainTask(this.depth - 1).compute() + left.join();
+        }
+    }
+
+
+    private static class ContextTask extends ContextRecursiveTask<Integer> {
+
+        private final int depth;
+
+        ContextTask(ContextSnapshot snapshot, int depth) {
+            super(snapshot);
+            this.depth = depth;
+        }
+
+        @Override
+        protected Integer computeWithContext() {
+            if (this.depth == 0) {
+                return 1;
+            }
+            ContextTask left = new ContextTask(getContextSnapshot(), this.depth - 1);
+            left.fork();
+            return new ContextTask(getContextSnapshot(), this.depth - 1).compute() + left.join();
+        }
+    }
+
+
+    private static class RestoringTask extends RecursiveTask<Integer> {
+
+        private final ContextSnapshot snapshot;
+
+        private final int depth;
+
+        RestoringTask(ContextSnapshot snapshot, int depth) {
+            this.snapshot = snapshot;
+            this.depth = depth;
+        }
+
+        @Override
+        protected Integer compute() {
+            try (ContextSnapshot.Scope scope = this.snapshot.setThreadLocalValues()) {
+                if (this.depth == 0) {
+                    return 1;
+                }
+                RestoringTask left = new RestoringTask(this.snapshot, this.depth - 1);
+                left.fork();
+                return new RestoringTask(this.snapshot, this.depth - 1).compute() + left.join();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.context.ContextCapturer;
+import io.micrometer.context.ContextSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks for tasks instrumented through {@link ContextSnapshot}, either
+ * directly or through an instrumented {@link ExecutorService}.
+ *
+ * <p>The snapshot is captured on setup. With {@code threadValues} set to
+ * {@code empty}, values are then removed from the benchmark thread, so every
+ * task has to set and reset all values, as it would on a worker thread. With
+ * {@code same}, values are left in place, as in a handoff to the same thread.
+ * The {@code ExecutorService} runs tasks on the calling thread to leave out
+ * the cost of the thread handoff.
+ *
+ * <p>The {@code capturingExecutorService} benchmarks capture on the calling
+ * thread for each task through a {@link ContextCapturer}, which reuses the
+ * previous snapshot while values are unchanged. They capture values only with
+ * {@code threadValues} set to {@code same}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class InstrumentationBenchmark {
+
+    private static final int INVOKE_ALL_TASK_COUNT = 10;
+
+
+    @Param({"1", "4", "16", "64"})
+    int accessorCount;
+
+    @Param({"1", "4", "16", "64"})
+    int snapshotSize;
+
+    @Param({"empty", "same"})
+    String threadValues;
+
+    private ThreadLocalAccessorFixture fixture;
+
+    private ContextSnapshot snapshot;
+
+    private ExecutorService executorService;
+
+    private ExecutorService capturingExecutorService;
+
+    private final Runnable runnable = () -> { };
+
+    private final List<Callable<Object>> callables = new ArrayList<>();
+
+
+    @Setup
+    public void setup() {
+        this.fixture = new ThreadLocalAccessorFixture(this.accessorCount);
+        this.fixture.setValues(this.snapshotSize);
+        this.snapshot = ContextSnapshot.capture(this.fixture.getRegistry(), key -> true);
+        if (this.threadValues.equals("empty")) {
+            this.fixture.resetValues();
+        }
+
+        this.executorService = this.snapshot.instrumentExecutorService(new DirectExecutorService());
+        this.capturingExecutorService = ContextCapturer.create(this.fixture.getRegistry(), key -> true)
+                .instrumentExecutorService(new DirectExecutorService());
+        for (int i = 0; i < INVOKE_ALL_TASK_COUNT; i++) {
+            this.callables.add(() -> "foo");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.executorService.shutdown();
+        this.capturingExecutorService.shutdown();
+        this.fixture.resetValues();
+    }
+
+
+    @Benchmark
+    public void instrumentRunnable() {
+        this.snapshot.instrumentRunnable(this.runnable).run();
+    }
+
+    @Benchmark
+    public Object executorServiceSubmit() throws ExecutionException, InterruptedException {
+        return this.executorService.submit(this.runnable).get();
+    }
+
+    @Benchmark
+    public void executorServiceInvokeAll(Blackhole blackhole) throws ExecutionException, InterruptedException {
+        for (Future<Object> future : this.executorService.invokeAll(this.callables)) {
+            blackhole.consume(future.get());
+        }
+    }
+
+    @Benchmark
+    public Object capturingExecutorServiceSubmit() throws ExecutionException, InterruptedException {
+        return this.capturingExecutorService.submit(this.runnable).get();
+    }
+
+    @Benchmark
+    public void capturingExecutorServiceInvokeAll(Blackhole blackhole)
+            throws ExecutionException, InterruptedException {
+
+        for (Future<Object> future : this.capturingExecutorService.invokeAll(this.callables)) {
+            blackhole.consume(future.get());
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import io.micrometer.context.ContextSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-element time of a parallel stream, plain, through
+ * {@link ContextSnapshot#instrumentStream}, which sets values once per split,
+ * and with values set around each element, for comparison. The
+ * {@code ShortCircuit} variants end with {@code anyMatch}, for which the
+ * stream advances one element at a time, and so an instrumented stream sets
+ * values around each element as well.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+@OperationsPerInvocation(ParallelStreamBenchmark.ELEMENT_COUNT)
+public class ParallelStreamBenchmark {
+
+    static final int ELEMENT_COUNT = 100_000;
+
+    @Param({"1", "4"})
+    int accessorCount;
+
+    private ThreadLocalAccessorFixture fixture;
+
+    private ContextSnapshot snapshot;
+
+
+    @Setup
+    public void setup() {
+        this.fixture = new ThreadLocalAccessorFixture(this.accessorCount);
+        this.fixture.setValues(this.accessorCount);
+        this.snapshot = ContextSnapshot.capture(this.fixture.getRegistry(), key -> true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.fixture.resetValues();
+    }
+
+
+    @Benchmark
+    public long plainStream() {
+        return LongStream.range(0, ELEMENT_COUNT).boxed().parallel()
+                .mapToLong(ParallelStreamBenchmark::work)
+                .sum();
+    }
+
+    @Benchmark
+    public long instrumentedStream() {
+        return this.snapshot.instrumentStream(LongStream.range(0, ELEMENT_COUNT).boxed().parallel())
+                .mapToLong(ParallelStreamBenchmark::work)
+                .sum();
+    }
+
+    @Benchmark
+    public long setValuesPerElement() {
+        return LongStream.range(0, ELEMENT_COUNT).boxed().parallel()
+                .mapToLong(value -> {
+                    try (ContextSnapshot.Scope scope = this.snapshot.setThreadLocalValues()) {
+                        return work(value);
+                    }
+                })
+                .sum();
+    }
+
+    @Benchmark
+    public boolean plainStreamShortCircuit() {
+        return LongStream.range(0, ELEMENT_COUNT).boxed().parallel()
+                .anyMatch(value -> work(value) < 0);
+    }
+
+    @Benchmark
+    public boolean instrumentedStreamShortCircuit() {
+        return this.snapshot.instrumentStream(LongStream.range(0, ELEMENT_COUNT).boxed().parallel())
+                .anyMatch(value -> work(value) < 0);
+    }
+
+    private static long work(Long value) {
+        return value * 31 + 7;
+    }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context.benchmark;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import io.micrometer.context.ReactorContextAccessor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+/**
+ * Benchmarks for {@link ReactorContextAccessor}.
+ *
+ * <p>{@code snapshotSize} is the number of registered keys, each with a value
+ * in the Reactor {@code Context} to read from, and in the {@code Map} to write
+ * from, while {@code contextSize} is the number of other entries in the
+ * {@code Context} to read from or write to.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReactorContextAccessorBenchmark {
+
+    @Param({"1", "2", "3", "4", "5", "6", "8", "10"})
+    int snapshotSize;
+
+    @Param({"0", "1", "4", "16"})
+    int contextSize;
+
+    private final ReactorContextAccessor accessor = new ReactorContextAccessor();
+
+    private Set<Object> registeredKeys;
+
+    private Predicate<Object> keyPredicate;
+
+    private ContextView contextToRead;
+
+    private Context contextToWrite;
+
+    private final Map<Object, Object> valuesToWrite = new HashMap<>();
+
+
+    @Setup
+    public void setup() {
+        Set<Object> registeredKeys = new HashSet<>();
+        Context context = Context.empty();
+        for (int i = 0; i < this.snapshotSize; i++) {
+            registeredKeys.add(ThreadLocalAccessorFixture.key(i));
+            context = context.put(ThreadLocalAccessorFixture.key(i), "value" + i);
+            this.valuesToWrite.put(ThreadLocalAccessorFixture.key(i), "value" + i);
+        }
+        this.registeredKeys = registeredKeys;
+        this.keyPredicate = registeredKeys::contains;
+
+        Context otherEntries = Context.empty();
+        for (int i = 0; i < this.contextSize; i++) {
+            otherEntries = otherEntries.put("context" + i, "value" + i);
+        }
+        this.contextToRead = context.putAll(otherEntries.readOnly());
+        this.contextToWrite = otherEntries;
+    }
+
+
+    @Benchmark
+    public Map<Object, Object> readValues() {
+        Map<Object, Object> readValues = new HashMap<>();
+        this.accessor.readValues(this.contextToRead, this.keyPredicate, readValues);
+        return readValues;
+    }
+
+    @Benchmark
+    public Map<Object, Object> readValuesForKeys() {
+        Map<Object, Object> readValues = new HashMap<>();
+        this.accessor.readValues(this.contextToRead, this.registeredKeys, readValues);
+        return readValues;
+    }
+
+    @Benchmark
+    public Context writeValues() {
+        return this.accessor.writeValues(this.valuesToWrite, this.contextToWrite);
+    }
+
+    /**
+     * Baseline for {@link #writeValues()}, through an intermediate, read-only
+     * {@code Context}.
+     */
+    @Benchmark
+    public Context writeValuesWithReadOnlyContext() {
+        return this.contextToWrite.putAll(Context.of(this.valuesToWrite).readOnly());
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.context.ReactorContextAccessor;
+import io.micrometer.context.ReactorContextHooks;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Flux;
+import reactor.util.context.Context;
+
+/**
+ * Throughput of a {@code Flux.range} pipeline with and without
+ * {@link ReactorContextHooks} enabled.
+ *
+ * <p>{@code accessorCount} is the number of registered accessors, each with a
+ * value in the subscriber {@code Context}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReactorContextHooksBenchmark {
+
+    @Param({"1", "4", "16"})
+    int accessorCount;
+
+    @Param({"10", "1000"})
+    int elementCount;
+
+    @Param({"false", "true"})
+    boolean hookEnabled;
+
+    private Context context;
+
+
+    @Setup
+    public void setup() {
+        ThreadLocalAccessorFixture fixture = new ThreadLocalAccessorFixture(this.accessorCount);
+        fixture.getRegistry().registerContextAccessor(new ReactorContextAccessor());
+        Context context = Context.empty();
+        for (int i = 0; i < this.accessorCount; i++) {
+            context = context.put(ThreadLocalAccessorFixture.key(i), "value" + i);
+        }
+        this.context = context;
+        if (this.hookEnabled) {
+            ReactorContextHooks.enable(fixture.getRegistry());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        ReactorContextHooks.disable();
+    }
+
+
+    @Benchmark
+    public Integer rangeMapFilter() {
+        return Flux.range(0, this.elementCount)
+                .map(i -> i + 1)
+                .filter(i -> (i & 1) == 0)
+                .contextWrite(this.context)
+                .blockLast();
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.context.ReactorContextHooks;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Throughput of a {@code publishOn} pipeline with and without the schedule
+ * hook of {@link ReactorContextHooks} enabled.
+ *
+ * <p>{@code accessorCount} is the number of registered accessors, and
+ * {@code snapshotSize} is the number of them with a value on the subscribing
+ * thread, where 0 shows the cost of the hook when there is nothing to
+ * propagate.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReactorScheduleHookBenchmark {
+
+    @Param({"4"})
+    int accessorCount;
+
+    @Param({"0", "1", "4"})
+    int snapshotSize;
+
+    @Param({"false", "true"})
+    boolean hookEnabled;
+
+    private ThreadLocalAccessorFixture fixture;
+
+    private Scheduler scheduler;
+
+
+    @Setup
+    public void setup() {
+        this.fixture = new ThreadLocalAccessorFixture(this.accessorCount);
+        this.fixture.setValues(this.snapshotSize);
+        this.scheduler = Schedulers.newSingle("benchmark");
+        if (this.hookEnabled) {
+            ReactorContextHooks.enableScheduleHook(this.fixture.getRegistry());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        ReactorContextHooks.disableScheduleHook();
+        this.scheduler.dispose();
+        this.fixture.resetValues();
+    }
+
+
+    @Benchmark
+    public Integer publishOn() {
+        return Flux.range(0, 1000)
+                .publishOn(this.scheduler)
+                .map(i -> i + 1)
+                .blockLast();
+    }
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.context.ContextPropagationRecorder;
+import io.micrometer.context.ContextSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks for setting {@code ThreadLocal} values from a
+ * {@link ContextSnapshot} and resetting them through the returned
+ * {@link ContextSnapshot.Scope}. Check {@code gc.alloc.rate.norm} for the
+ * bytes allocated per set and reset.
+ *
+ * <p>{@code threadValues} controls what the benchmark thread holds at the
+ * time of the call:
+ * <ul>
+ * <li>{@code empty} -- no values, as on a pool worker thread.
+ * <li>{@code other} -- different values for the same keys, which are then
+ * restored on close.
+ * <li>{@code same} -- the same values as in the snapshot, as after a handoff
+ * to the same thread, or with nested instrumentation.
+ * </ul>
+ *
+ * <p>With {@code recorder} set to {@code true}, a
+ * {@link ContextPropagationRecorder} times each value set and restored.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ScopeBenchmark {
+
+    @Param({"1", "4", "16", "64"})
+    int accessorCount;
+
+    @Param({"1", "4", "16", "64"})
+    int snapshotSize;
+
+    @Param({"empty", "other", "same"})
+    String threadValues;
+
+    @Param({"false", "true"})
+    boolean recorder;
+
+    private ThreadLocalAccessorFixture fixture;
+
+    private ContextSnapshot snapshot;
+
+
+    @Setup
+    public void setup() {
+        this.fixture = new ThreadLocalAccessorFixture(this.accessorCount);
+        if (this.recorder) {
+            this.fixture.getRegistry().setPropagationListener(new ContextPropagationRecorder());
+        }
+        this.fixture.setValues(this.snapshotSize);
+        this.snapshot = ContextSnapshot.capture(this.fixture.getRegistry(), key -> true);
+        if (this.threadValues.equals("same")) {
+            return;
+        }
+        this.fixture.resetValues();
+        if (this.threadValues.equals("other")) {
+            // new value instances, equal to but not the same as in the snapshot
+            this.fixture.setValues(this.snapshotSize);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.fixture.resetValues();
+    }
+
+
+    @Benchmark
+    public ContextSnapshot.Scope setThreadLocalValuesAndClose() {
+        ContextSnapshot.Scope scope = this.snapshot.setThreadLocalValues();
+        scope.close();
+        return scope;
+    }
+
+}
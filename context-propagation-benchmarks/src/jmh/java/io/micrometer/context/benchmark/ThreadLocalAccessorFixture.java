@@ -0,0 +1,86 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.micrometer.context.ChangeTrackedThreadLocalAccessor;
+import io.micrometer.context.ContextRegistry;
+
+/**
+ * A {@link ContextRegistry} with a given number of registered
+ * {@link BenchmarkThreadLocalAccessor}'s, and the ability to set values for a
+ * subset of them on the current thread.
+ *
+ * <p>The accessors can optionally be
+ * {@link ChangeTrackedThreadLocalAccessor}'s, in which case changes made
+ * through the fixture are reported.
+ */
+final class ThreadLocalAccessorFixture {
+
+    private final ContextRegistry registry = new ContextRegistry();
+
+    private final List<ThreadLocal<Object>> threadLocals = new ArrayList<>();
+
+
+    ThreadLocalAccessorFixture(int accessorCount) {
+        this(accessorCount, false);
+    }
+
+    ThreadLocalAccessorFixture(int accessorCount, boolean changeTracked) {
+        for (int i = 0; i < accessorCount; i++) {
+            ThreadLocal<Object> threadLocal = new ThreadLocal<>();
+            this.threadLocals.add(threadLocal);
+            this.registry.registerThreadLocalAccessor(changeTracked ?
+                    new ChangeTrackedBenchmarkThreadLocalAccessor(key(i), threadLocal) :
+                    new BenchmarkThreadLocalAccessor(key(i), threadLocal));
+        }
+    }
+
+
+    ContextRegistry getRegistry() {
+        return this.registry;
+    }
+
+    /**
+     * Set values for the first {@code count} accessors on the current thread.
+     * A count larger than the number of accessors is capped, so that the
+     * snapshot size parameter can be combined freely with the accessor count.
+     * @return the number of values actually set
+     */
+    int setValues(int count) {
+        int size = Math.min(count, this.threadLocals.size());
+        for (int i = 0; i < size; i++) {
+            this.threadLocals.get(i).set("value" + i);
+        }
+        ChangeTrackedThreadLocalAccessor.valueChanged();
+        return size;
+    }
+
+    /**
+     * Remove all values on the current thread.
+     */
+    void resetValues() {
+        this.threadLocals.forEach(ThreadLocal::remove);
+        ChangeTrackedThreadLocalAccessor.valueChanged();
+    }
+
+    static String key(int index) {
+        return "key" + index;
+    }
+
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context.scopedvalue;
+
+/**
+ * Default implementation of {@link ScopedValueAccessor}.
+ *
+ * @param key the key of the value
+ * @param scopedValue the {@code ScopedValue} to bind
+ * @param <V> the type of value
+ * @since 1.0.0
+ */
+record DefaultScopedValueAccessor<V>(Object key, ScopedValue<V> scopedValue) implements ScopedValueAccessor<V> {
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context.scopedvalue;
+
+import io.micrometer.context.ContextSnapshot;
+import io.micrometer.context.ThreadLocalAccessor;
+
+/**
+ * Counterpart of {@link ThreadLocalAccessor} for a {@link ScopedValue}, to
+ * bind a {@link ContextSnapshot} value to it with a {@link ScopedValueBinder}.
+ *
+ * <p>A {@code ScopedValue} cannot be set, only bound for the duration of a
+ * call, after which it reverts to its previous binding, if any. There is
+ * nothing to reset or restore as a result, and no cost per thread, while
+ * threads forked in a {@code StructuredTaskScope} inherit the bindings
+ * without copying them.
+ *
+ * @param <V> the type of value bound to the {@code ScopedValue}
+ * @since 1.0.0
+ */
+public interface ScopedValueAccessor<V> {
+
+    /**
+     * The key to associate with the {@code ScopedValue}, i.e. the key of the
+     * value to bind to it from a {@link ContextSnapshot}.
+     */
+    Object key();
+
+    /**
+     * The {@code ScopedValue} to bind.
+     */
+    ScopedValue<V> scopedValue();
+
+    /**
+     * Return the value bound to the {@code ScopedValue} on the current thread.
+     * @return the current value, or {@code null} if not bound
+     */
+    @Nullable
+    default V getValue() {
+        ScopedValue<V> scopedValue = scopedValue();
+        return (scopedValue.isBound() ? scopedValue.get() : null);
+    }
+
+
+    /**
+     * Create an accessor for the given key and {@code ScopedValue}.
+     * @param key the key of the value to bind
+     * @param scopedValue the {@code ScopedValue} to bind to
+     * @param <V> the type of value
+     * @return the created accessor
+     */
+    static <V> ScopedValueAccessor<V> of(Object key, ScopedValue<V> scopedValue) {
+        return new DefaultScopedValueAccessor<>(key, scopedValue);
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context.scopedvalue;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+import io.micrometer.context.ContextSnapshot;
+
+/**
+ * Runs a {@link Runnable} or a {@link Callable} with the values of a
+ * {@link ContextSnapshot} bound to {@link ScopedValue}'s, as an alternative
+ * to {@link ContextSnapshot#setThreadLocalValues()}.
+ *
+ * <p>All values are bound in one {@link ScopedValue.Carrier}, and remain
+ * bound for the duration of the call only. There are no previous values to
+ * read and restore, as with {@link ThreadLocal}'s, and threads forked in a
+ * {@code StructuredTaskScope} during the call see the same bindings, without
+ * any copying. Values are looked up in the snapshot by the
+ * {@link ScopedValueAccessor#key() key} of each accessor, through the
+ * {@link ScopedValueContextAccessor} of the snapshot's {@code ContextRegistry},
+ * and accessors without a value are not bound.
+ *
+ * <pre class="code">
+ * ScopedValueBinder binder = ScopedValueBinder.of(ScopedValueAccessor.of("user", USER));
+ * ContextSnapshot snapshot = ContextSnapshot.capture(key -> true, contextView);
+ * binder.run(snapshot, () -&gt; ...);
+ * </pre>
+ *
+ * @since 1.0.0
+ */
+public final class ScopedValueBinder {
+
+    private final ScopedValueAccessor<?>[] accessors;
+
+
+    private ScopedValueBinder(ScopedValueAccessor<?>[] accessors) {
+        this.accessors = accessors;
+    }
+
+
+    /**
+     * Run the given task with the values of the snapshot bound.
+     * @param snapshot the snapshot with the values to bind
+     * @param task the task to run
+     */
+    public void run(ContextSnapshot snapshot, Runnable task) {
+        ScopedValue.Carrier carrier = bind(snapshot);
+        if (carrier != null) {
+            carrier.run(task);
+        }
+        else {
+            task.run();
+        }
+    }
+
+    /**
+     * Call the given task with the values of the snapshot bound.
+     * @param snapshot the snapshot with the values to bind
+     * @param task the task to call
+     * @param <T> the type of result
+     * @return the result of the task
+     * @throws Exception if thrown by the task
+     */
+    public <T> T call(ContextSnapshot snapshot, Callable<T> task) throws Exception {
+        ScopedValue.Carrier carrier = bind(snapshot);
+        return (carrier != null ? carrier.call(task::call) : task.call());
+    }
+
+    /**
+     * Return a {@link Runnable} that runs the given task through
+     * {@link #run(ContextSnapshot, Runnable)}, e.g. to submit to an executor.
+     * @param snapshot the snapshot with the values to bind
+     * @param task the task to run
+     */
+    public Runnable wrap(ContextSnapshot snapshot, Runnable task) {
+        return () -> run(snapshot, task);
+    }
+
+    @Nullable
+    private ScopedValue.Carrier bind(ContextSnapshot snapshot) {
+        return snapshot.updateContext(new ScopedValueBindings(this.accessors)).getCarrier();
+    }
+
+    @Override
+    public String toString() {
+        return "ScopedValueBinder" + Arrays.toString(this.accessors);
+    }
+
+
+    /**
+     * Create a binder for the given accessors.
+     * @param accessors the accessors with the {@code ScopedValue}'s to bind
+     * @return the created binder
+     */
+    public static ScopedValueBinder of(ScopedValueAccessor<?>... accessors) {
+        return new ScopedValueBinder(accessors.clone());
+    }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context.scopedvalue;
+
+import java.util.Map;
+
+/**
+ * Target of {@link ScopedValueContextAccessor} that collects the values of a
+ * {@code ContextSnapshot} for the accessors of a {@link ScopedValueBinder}
+ * into one {@link ScopedValue.Carrier}.
+ *
+ * @since 1.0.0
+ */
+final class ScopedValueBindings {
+
+    private final ScopedValueAccessor<?>[] accessors;
+
+    @Nullable
+    private ScopedValue.Carrier carrier;
+
+
+    ScopedValueBindings(ScopedValueAccessor<?>[] accessors) {
+        this.accessors = accessors;
+    }
+
+
+    /**
+     * Add a binding for each accessor with a value among the given values.
+     * @param values the values to bind, by key
+     */
+    @SuppressWarnings("unchecked")
+    void bind(Map<Object, Object> values) {
+        for (ScopedValueAccessor<?> accessor : this.accessors) {
+            Object value = values.get(accessor.key());
+            if (value != null) {
+                ScopedValue<Object> scopedValue = (ScopedValue<Object>) accessor.scopedValue();
+                this.carrier = (this.carrier != null ?
+                        this.carrier.where(scopedValue, value) : ScopedValue.where(scopedValue, value));
+            }
+        }
+    }
+
+    /**
+     * Return the carrier with the bound values, or {@code null} if none of
+     * the accessors had a value.
+     */
+    @Nullable
+    ScopedValue.Carrier getCarrier() {
+        return this.carrier;
+    }
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context.scopedvalue;
+
+import java.util.Map;
+import java.util.function.Predicate;
+
+import io.micrometer.context.ContextAccessor;
+import io.micrometer.context.ContextRegistry;
+import io.micrometer.context.ContextSnapshot;
+
+/**
+ * {@code ContextAccessor} through which a {@link ScopedValueBinder} reads the
+ * values of a {@link ContextSnapshot}, via
+ * {@link ContextSnapshot#updateContext(Object)}, to bind them to the
+ * {@link ScopedValue}'s of its accessors. It only writes, and only to the
+ * internal type of context of the binder.
+ *
+ * <p>Registered through {@link java.util.ServiceLoader}, and so found by
+ * {@link ContextRegistry#getInstance()}. A {@code ContextRegistry} created
+ * separately must register it, e.g. with
+ * {@code registry.registerContextAccessor(new ScopedValueContextAccessor())}.
+ *
+ * @since 1.0.0
+ */
+public class ScopedValueContextAccessor implements ContextAccessor<Object, Object> {
+
+    @Override
+    public boolean canReadFrom(Class<?> contextType) {
+        return false;
+    }
+
+    @Override
+    public void readValues(Object sourceContext, Predicate<Object> keyPredicate, Map<Object, Object> readValues) {
+        throw new UnsupportedOperationException("Scoped values are not read into a ContextSnapshot");
+    }
+
+    @Override
+    public boolean canWriteTo(Class<?> contextType) {
+        return ScopedValueBindings.class == contextType;
+    }
+
+    @Override
+    public Object writeValues(Map<Object, Object> valuesToWrite, Object targetContext) {
+        ((ScopedValueBindings) targetContext).bind(valuesToWrite);
+        return targetContext;
+    }
+
+}
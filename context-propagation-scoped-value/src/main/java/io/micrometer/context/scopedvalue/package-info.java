@@ -0,0 +1,30 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+/**
+ * This package binds context values to {@link java.lang.ScopedValue}'s, as
+ * an alternative to {@link java.lang.ThreadLocal}'s, on Java 25 and later.
+ * <ul>
+ * <li>{@link io.micrometer.context.scopedvalue.ScopedValueAccessor} associates a
+ * {@code ScopedValue} with the key of a context value.
+ * <li>{@link io.micrometer.context.scopedvalue.ScopedValueBinder} runs tasks with
+ * the values of a {@link io.micrometer.context.ContextSnapshot} bound to the
+ * {@code ScopedValue}'s of its accessors.
+ * </ul>
+ */
+@NonNullApi
+@NonNullFields
+package io.micrometer.context.scopedvalue;
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2002-2022 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.micrometer.context.scopedvalue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import io.micrometer.context.ContextRegistry;
+import io.micrometer.context.ContextSnapshot;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+/**
+ * Unit tests for {@link ScopedValueBinder}.
+ */
+public class ScopedValueBinderTests {
+
+    private static final ScopedValue<String> FOO = ScopedValue.newInstance();
+
+    private static final ScopedValue<String> BAR = ScopedValue.newInstance();
+
+
+    private final ContextRegistry registry =
+            new ContextRegistry().registerContextAccessor(new ScopedValueContextAccessor());
+
+    private final ThreadLocal<String> fooThreadLocal = new ThreadLocal<>();
+
+    private final ScopedValueBinder binder =
+            ScopedValueBinder.of(ScopedValueAccessor.of("foo", FOO), ScopedValueAccessor.of("bar", BAR));
+
+    private final List<String> observedValues = new ArrayList<>();
+
+
+    @AfterEach
+    void clear() {
+        this.fooThreadLocal.remove();
+    }
+
+
+    @Test
+    void should_bind_thread_local_values() {
+        this.registry.registerThreadLocalAccessor(new TestThreadLocalAccessor("foo", this.fooThreadLocal));
+        this.fooThreadLocal.set("fooValue");
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true);
+        this.fooThreadLocal.remove();
+
+        this.binder.run(snapshot, () -> {
+            this.observedValues.add(FOO.get());
+            this.observedValues.add(String.valueOf(BAR.isBound()));
+        });
+
+        then(this.observedValues).containsExactly("fooValue", "false");
+        then(FOO.isBound()).isFalse();
+        then(this.fooThreadLocal.get()).isNull();
+    }
+
+    @Test
+    void should_bind_context_values() throws Exception {
+        this.registry.registerContextAccessor(new TestContextAccessor());
+        ContextSnapshot snapshot = ContextSnapshot.capture(
+                this.registry, key -> true, Collections.singletonMap("bar", "barValue"));
+
+        String result = this.binder.call(snapshot, () -> BAR.get());
+
+        then(result).isEqualTo("barValue");
+        then(BAR.isBound()).isFalse();
+    }
+
+    @Test
+    void should_bind_lazily_captured_values() throws Exception {
+        this.registry.registerContextAccessor(new TestContextAccessor());
+        ContextSnapshot snapshot = ContextSnapshot.captureLazily(
+                this.registry, key -> true, Collections.singletonMap("foo", "fooValue"));
+
+        then(this.binder.call(snapshot, () -> FOO.get())).isEqualTo("fooValue");
+    }
+
+    @Test
+    void should_shadow_and_restore_outer_binding() throws Exception {
+        this.registry.registerContextAccessor(new TestContextAccessor());
+        ContextSnapshot snapshot = ContextSnapshot.capture(
+                this.registry, key -> true, Collections.singletonMap("foo", "innerValue"));
+
+        String result = ScopedValue.where(FOO, "outerValue").call(() -> {
+            this.observedValues.add(this.binder.call(snapshot, () -> FOO.get()));
+            return FOO.get();
+        });
+
+        then(this.observedValues).containsExactly("innerValue");
+        then(result).isEqualTo("outerValue");
+    }
+
+    @Test
+    void should_run_without_binding_when_snapshot_has_no_values() {
+        ContextSnapshot snapshot = ContextSnapshot.capture(this.registry, key -> true);
+
+        this.binder.wrap(snapshot, () -> this.observedValues.add(String.valueOf(FOO.isBound()))).run();
+
+        then(this.observedValues).containsExactly("false");
+    }
+
+    @Test
+    void should_get_bound_value_through_accessor() {
+        ScopedValueAccessor<String> accessor = ScopedValueAccessor.of("foo", FOO);
+        then(accessor.getValue()).isNull();
+        ScopedValue.where(FOO, "fooValue").run(() -> this.observedValues.add(accessor.getValue()));
+        then(this.observedValues).containsExactly("fooValue");
+    }
+
+    @Test
+    void should_load_context_accessor_through_service_loader() {
+        ContextRegistry registry = new ContextRegistry().loadContextAccessors();
+
+        then(registry.getContextAccessors()).hasAtLeastOneElementOfType(ScopedValueContextAccessor.class);
+    }
+
+    @Test
+    void should_not_read_scoped_values_into_snapshot() {
+        then(new ScopedValueContextAccessor().canReadFrom(ScopedValueBindings.class)).isFalse();
+    }
+
+}